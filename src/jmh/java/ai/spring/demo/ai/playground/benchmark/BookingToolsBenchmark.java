@@ -0,0 +1,132 @@
+package ai.spring.demo.ai.playground.benchmark;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import ai.spring.demo.ai.playground.services.BookingGenerator;
+import ai.spring.demo.ai.playground.services.BookingTools;
+import ai.spring.demo.ai.playground.services.BookingTools.BookingDetails;
+import ai.spring.demo.ai.playground.services.BookingTools.BookingDetailsRequest;
+import ai.spring.demo.ai.playground.services.BookingTools.CancelBookingRequest;
+import ai.spring.demo.ai.playground.services.BookingTools.ChangeBookingDatesRequest;
+import ai.spring.demo.ai.playground.services.FlightBookingService;
+import ai.spring.demo.ai.playground.services.ToolExecutor;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+/**
+ * Booking lookups and the {@link BookingTools} function beans against generated booking
+ * tables of increasing size.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class BookingToolsBenchmark {
+
+    @Param({ "10", "100000", "1000000" })
+    int bookings;
+
+    private AnnotationConfigApplicationContext context;
+
+    private FlightBookingService flightBookingService;
+
+    private Function<BookingDetailsRequest, BookingDetails> getBookingDetails;
+
+    private Function<ChangeBookingDatesRequest, String> changeBooking;
+
+    private Function<CancelBookingRequest, String> cancelBooking;
+
+    // Bookings that are far enough in the future to be changed and cancelled
+    private List<BookingDetails> targets;
+
+    private String newDate;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int next;
+
+        BookingDetails next(List<BookingDetails> targets) {
+            next = (next + 1) % targets.size();
+            return targets.get(next);
+        }
+    }
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        context = new AnnotationConfigApplicationContext();
+        // Binds the tool timeouts, like "5s", as in the application
+        context.getBeanFactory().setConversionService(ApplicationConversionService.getSharedInstance());
+        context.registerBean(BookingGenerator.class,
+                () -> new BookingGenerator(bookings, Math.max(1, bookings / 10), 42, 1.1, 1.0));
+        context.registerBean(MeterRegistry.class, SimpleMeterRegistry::new);
+        context.register(FlightBookingService.class, ToolExecutor.class, BookingTools.class);
+        context.refresh();
+
+        flightBookingService = context.getBean(FlightBookingService.class);
+        getBookingDetails = context.getBean("getBookingDetails", Function.class);
+        changeBooking = context.getBean("changeBooking", Function.class);
+        cancelBooking = context.getBean("cancelBooking", Function.class);
+
+        LocalDate earliest = LocalDate.now().plusDays(3);
+        targets = flightBookingService.getBookings().stream()
+                .filter(booking -> booking.date().isAfter(earliest))
+                .limit(1024)
+                .toList();
+        newDate = LocalDate.now().plusDays(30).toString();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public BookingDetails findBooking(Cursor cursor) {
+        BookingDetails target = cursor.next(targets);
+        return flightBookingService.getBookingDetails(target.bookingNumber(), target.firstName(), target.lastName());
+    }
+
+    @Benchmark
+    public BookingDetails getBookingDetailsTool(Cursor cursor) {
+        BookingDetails target = cursor.next(targets);
+        return getBookingDetails.apply(
+                new BookingDetailsRequest(target.bookingNumber(), target.firstName(), target.lastName()));
+    }
+
+    @Benchmark
+    public String changeBookingTool(Cursor cursor) {
+        BookingDetails target = cursor.next(targets);
+        return changeBooking.apply(new ChangeBookingDatesRequest(target.bookingNumber(), target.firstName(),
+                target.lastName(), newDate, target.to(), target.from()));
+    }
+
+    @Benchmark
+    public String cancelBookingTool(Cursor cursor) {
+        BookingDetails target = cursor.next(targets);
+        return cancelBooking.apply(
+                new CancelBookingRequest(target.bookingNumber(), target.firstName(), target.lastName()));
+    }
+}
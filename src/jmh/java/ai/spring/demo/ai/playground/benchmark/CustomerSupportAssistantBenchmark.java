@@ -0,0 +1,101 @@
+package ai.spring.demo.ai.playground.benchmark;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ai.spring.demo.ai.playground.cache.ConversationRetrievalAdvisor;
+import ai.spring.demo.ai.playground.metrics.ModelMetrics;
+import ai.spring.demo.ai.playground.services.CustomerSupportAssistant;
+import ai.spring.demo.ai.playground.services.TracingAdvisor;
+import ai.spring.demo.ai.playground.vectorstore.OffHeapVectorStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.memory.InMemoryChatMemory;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.reader.TextReader;
+import org.springframework.ai.transformer.splitter.TokenTextSplitter;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.core.io.ClassPathResource;
+
+/**
+ * One chat turn through {@link CustomerSupportAssistant}: system prompt rendering, the
+ * advisor chain (chat memory, conversation-aware RAG over the terms of service, sampled tracing) and streaming, with
+ * stub chat and embedding models so only the application side is measured.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CustomerSupportAssistantBenchmark {
+
+    private static final int CONVERSATIONS = 64;
+
+    // Share of chat turns traced to the log
+    @Param({ "0", "0.1" })
+    private double tracingSampleRate;
+
+    private EmbeddingModel embeddingModel;
+
+    private VectorStore vectorStore;
+
+    private ChatMemory chatMemory;
+
+    private TracingAdvisor tracingAdvisor;
+
+    private CustomerSupportAssistant assistant;
+
+    private final AtomicInteger turn = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setupModels() {
+        embeddingModel = new StubEmbeddingModel(VectorStoreBenchmark.DIMENSIONS);
+        vectorStore = new OffHeapVectorStore(embeddingModel);
+        vectorStore.write(new TokenTextSplitter()
+                .transform(new TextReader(new ClassPathResource("rag/terms-of-service.txt")).read()));
+        tracingAdvisor = new TracingAdvisor(new SimpleMeterRegistry(), tracingSampleRate, 512, 1024, List.of());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        tracingAdvisor.close();
+    }
+
+    // Fresh conversations per iteration, so the memory size stays comparable between iterations
+    @Setup(Level.Iteration)
+    public void setupAssistant() {
+        chatMemory = new InMemoryChatMemory();
+        var retrievalAdvisor = new ConversationRetrievalAdvisor(vectorStore, embeddingModel, new SimpleMeterRegistry(),
+                SearchRequest.DEFAULT_TOP_K, SearchRequest.SIMILARITY_THRESHOLD_ACCEPT_ALL, 0.9, 10_000,
+                Duration.ofMinutes(30));
+        assistant = new CustomerSupportAssistant(ChatClient.builder(new StubChatModel()), retrievalAdvisor,
+                chatMemory, tracingAdvisor, new ModelMetrics(new SimpleMeterRegistry()));
+    }
+
+    @Benchmark
+    public String chatTurn() {
+        int n = turn.incrementAndGet();
+        return assistant.chat("conversation-" + (n % CONVERSATIONS), "I want to change my booking FUN-" + n)
+                .reduce("", String::concat)
+                .block();
+    }
+}
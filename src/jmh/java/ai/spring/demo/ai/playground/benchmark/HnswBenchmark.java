@@ -0,0 +1,142 @@
+package ai.spring.demo.ai.playground.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import ai.spring.demo.ai.playground.vectorstore.HnswVectorStore;
+import ai.spring.demo.ai.playground.vectorstore.OffHeapVectorStore;
+import ai.spring.demo.ai.playground.vectorstore.VectorMath;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.ai.document.Document;
+
+/**
+ * Recall versus latency of {@link HnswVectorStore} against the exact
+ * {@link OffHeapVectorStore} on a clustered synthetic corpus. Recall@10 of every
+ * configuration is printed during setup; the benchmarks measure the query latency.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx4g", "--add-modules", "jdk.incubator.vector" })
+@State(Scope.Benchmark)
+public class HnswBenchmark {
+
+    private static final int DIMENSIONS = 256;
+
+    private static final int CLUSTERS = 100;
+
+    private static final int QUERIES = 500;
+
+    private static final int K = 10;
+
+    @Param({ "10000", "100000" })
+    int documents;
+
+    @Param({ "16" })
+    int m;
+
+    @Param({ "200" })
+    int efConstruction;
+
+    @Param({ "10", "40", "160" })
+    int efSearch;
+
+    private OffHeapVectorStore exact;
+
+    private HnswVectorStore hnsw;
+
+    private float[][] queries;
+
+    private int next;
+
+    @Setup
+    public void setup() {
+        var random = new SplittableRandom(42);
+        float[][] centers = new float[CLUSTERS][];
+        for (int c = 0; c < CLUSTERS; c++) {
+            centers[c] = gaussian(random, null, 1);
+        }
+        List<Document> corpus = new ArrayList<>(documents);
+        for (int i = 0; i < documents; i++) {
+            float[] vector = gaussian(random, centers[random.nextInt(CLUSTERS)], 0.5);
+            var document = new Document("doc-" + i, "document " + i, Map.of());
+            document.setEmbedding(toList(vector));
+            corpus.add(document);
+        }
+        queries = new float[QUERIES][];
+        for (int q = 0; q < QUERIES; q++) {
+            queries[q] = gaussian(random, centers[random.nextInt(CLUSTERS)], 0.5);
+            VectorMath.normalize(queries[q]);
+        }
+
+        var embeddingModel = new StubEmbeddingModel(DIMENSIONS);
+        exact = new OffHeapVectorStore(embeddingModel);
+        exact.add(corpus);
+        hnsw = new HnswVectorStore(embeddingModel, m, efConstruction, efSearch);
+        long start = System.nanoTime();
+        hnsw.add(corpus);
+        long buildMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        int found = 0;
+        for (float[] query : queries) {
+            Set<String> expected = new HashSet<>();
+            exact.search(query, K, -1).forEach(document -> expected.add(document.getId()));
+            for (Document document : hnsw.search(query, K, -1)) {
+                if (expected.contains(document.getId())) {
+                    found++;
+                }
+            }
+        }
+        System.out.printf("%nHNSW documents=%d m=%d efConstruction=%d efSearch=%d: recall@%d %.4f, built in %d ms%n",
+                documents, m, efConstruction, efSearch, K, (double) found / (QUERIES * K), buildMillis);
+    }
+
+    private static float[] gaussian(SplittableRandom random, float[] center, double sigma) {
+        float[] vector = new float[DIMENSIONS];
+        for (int d = 0; d < DIMENSIONS; d++) {
+            vector[d] = (float) ((center == null ? 0 : center[d]) + random.nextGaussian() * sigma);
+        }
+        return vector;
+    }
+
+    private static List<Double> toList(float[] vector) {
+        List<Double> list = new ArrayList<>(vector.length);
+        for (float component : vector) {
+            list.add((double) component);
+        }
+        return list;
+    }
+
+    private float[] nextQuery() {
+        float[] query = queries[next];
+        next = (next + 1) % QUERIES;
+        return query;
+    }
+
+    @Benchmark
+    public List<Document> exact() {
+        return exact.search(nextQuery(), K, -1);
+    }
+
+    @Benchmark
+    public List<Document> hnsw() {
+        return hnsw.search(nextQuery(), K, -1);
+    }
+}
@@ -0,0 +1,40 @@
+package ai.spring.demo.ai.playground.benchmark;
+
+import java.util.List;
+
+import reactor.core.publisher.Flux;
+
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.function.FunctionCallingOptionsBuilder;
+
+/**
+ * Offline {@link ChatModel} answering every prompt with the same text, streamed word by
+ * word. The prompt is still rendered, so the cost of prompt assembly is measured.
+ */
+public class StubChatModel implements ChatModel {
+
+    private static final String ANSWER = "Thank you for contacting Funnair. Could you please provide your booking number, first name and last name?";
+
+    private static final List<String> TOKENS = List.of(ANSWER.split("(?<= )"));
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        prompt.getContents();
+        return new ChatResponse(List.of(new Generation(ANSWER)));
+    }
+
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        prompt.getContents();
+        return Flux.fromIterable(TOKENS).map(token -> new ChatResponse(List.of(new Generation(token))));
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions() {
+        return FunctionCallingOptionsBuilder.builder().build();
+    }
+}
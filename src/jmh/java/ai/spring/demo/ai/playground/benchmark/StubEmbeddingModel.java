@@ -0,0 +1,67 @@
+package ai.spring.demo.ai.playground.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+/**
+ * Offline {@link EmbeddingModel} that hashes the words of a text into a fixed number of
+ * dimensions. Texts sharing words get similar embeddings, which is enough to exercise
+ * vector search realistically without calling a provider.
+ */
+public class StubEmbeddingModel implements EmbeddingModel {
+
+    private final int dimensions;
+
+    public StubEmbeddingModel(int dimensions) {
+        this.dimensions = dimensions;
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        List<Embedding> embeddings = new ArrayList<>();
+        List<String> texts = request.getInstructions();
+        for (int i = 0; i < texts.size(); i++) {
+            embeddings.add(new Embedding(embed(texts.get(i)), i));
+        }
+        return new EmbeddingResponse(embeddings);
+    }
+
+    @Override
+    public List<Double> embed(Document document) {
+        return embed(document.getContent());
+    }
+
+    @Override
+    public List<Double> embed(String text) {
+        double[] vector = new double[this.dimensions];
+        for (String word : text.toLowerCase().split("[^\\p{L}\\p{N}]+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            int hash = word.hashCode() * 0x9E3779B9;
+            vector[Math.floorMod(hash, this.dimensions)] += (hash & 0x80000000) == 0 ? 1 : -1;
+        }
+        double norm = Math.sqrt(Arrays.stream(vector).map(v -> v * v).sum());
+        if (norm == 0) {
+            vector[0] = 1;
+            norm = 1;
+        }
+        List<Double> embedding = new ArrayList<>(this.dimensions);
+        for (double v : vector) {
+            embedding.add(v / norm);
+        }
+        return embedding;
+    }
+
+    @Override
+    public int dimensions() {
+        return this.dimensions;
+    }
+}
@@ -0,0 +1,92 @@
+package ai.spring.demo.ai.playground.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import ai.spring.demo.ai.playground.vectorstore.OffHeapVectorStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.SimpleVectorStore;
+import org.springframework.ai.vectorstore.VectorStore;
+
+/**
+ * {@link VectorStore#similaritySearch(SearchRequest)} over a synthetic corpus embedded with
+ * {@link StubEmbeddingModel}, as done by {@code QuestionAnswerAdvisor} on every chat turn.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx4g", "--add-modules", "jdk.incubator.vector" })
+@State(Scope.Benchmark)
+public class VectorStoreBenchmark {
+
+    static final int DIMENSIONS = 1536;
+
+    private static final List<String> WORDS = List.of("booking", "change", "cancel", "fee", "refund", "flight",
+            "date", "customer", "terms", "service", "baggage", "seat", "economy", "business", "premium", "hours",
+            "notice", "charge", "policy", "travel", "airport", "delay", "compensation", "ticket", "upgrade");
+
+    @Param({ "1000", "10000" })
+    int documents;
+
+    @Param({ "simple", "offheap" })
+    String store;
+
+    private VectorStore vectorStore;
+
+    private SearchRequest request;
+
+    @Setup
+    public void setup() {
+        var embeddingModel = new StubEmbeddingModel(DIMENSIONS);
+        vectorStore = createStore(store, embeddingModel);
+        vectorStore.add(corpus(documents, 42));
+        request = SearchRequest.query("Can I change the date of my booking and is there a fee?").withTopK(4);
+    }
+
+    static VectorStore createStore(String type, StubEmbeddingModel embeddingModel) {
+        return switch (type) {
+            case "simple" -> new SimpleVectorStore(embeddingModel);
+            case "offheap" -> new OffHeapVectorStore(embeddingModel);
+            default -> throw new IllegalArgumentException("Unknown vector store " + type);
+        };
+    }
+
+    /**
+     * Synthetic chunks of 40 to 80 words drawn from a booking vocabulary.
+     */
+    static List<Document> corpus(int size, long seed) {
+        var random = new SplittableRandom(seed);
+        List<Document> corpus = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            var content = new StringBuilder();
+            int words = 40 + random.nextInt(41);
+            for (int w = 0; w < words; w++) {
+                content.append(WORDS.get(random.nextInt(WORDS.size()))).append(' ');
+            }
+            corpus.add(new Document("doc-" + i, content.toString(), Map.of()));
+        }
+        return corpus;
+    }
+
+    @Benchmark
+    public List<Document> similaritySearch() {
+        return vectorStore.similaritySearch(request);
+    }
+}
@@ -0,0 +1,56 @@
+package ai.spring.demo.ai.playground.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * Latencies and errors of one operation. Every sample is kept, so that percentiles are
+ * exact; a run of a few million requests takes some tens of megabytes.
+ */
+final class LatencyRecorder {
+
+    private long[] latencies = new long[1024];
+
+    private int count;
+
+    private long errors;
+
+    synchronized void record(long nanos) {
+        if (count == latencies.length) {
+            latencies = Arrays.copyOf(latencies, count * 2);
+        }
+        latencies[count++] = nanos;
+    }
+
+    synchronized void error() {
+        errors++;
+    }
+
+    synchronized Snapshot snapshot() {
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        return new Snapshot(sorted, errors);
+    }
+
+    record Snapshot(long[] sorted, long errors) {
+
+        long count() {
+            return sorted.length;
+        }
+
+        double errorRate() {
+            long total = sorted.length + errors;
+            return total == 0 ? 0 : (double) errors / total;
+        }
+
+        /**
+         * Returns the nearest-rank percentile in milliseconds, or NaN without samples.
+         */
+        double percentile(double percentile) {
+            if (sorted.length == 0) {
+                return Double.NaN;
+            }
+            int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+            return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)] / 1e6;
+        }
+    }
+}
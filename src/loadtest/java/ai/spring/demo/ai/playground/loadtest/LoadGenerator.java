@@ -0,0 +1,380 @@
+package ai.spring.demo.ai.playground.loadtest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Load generator for the playground, driving scripted support conversations and the REST
+ * endpoints.
+ * <p>
+ * Conversations go through the server-sent events endpoint of the assistant, enabled with
+ * {@code playground.assistant.sse.enabled=true}, and look up, and optionally cancel, real
+ * bookings of the application. The load is either a closed model of {@code concurrency}
+ * virtual users running one scenario after the other, or an open model of scenarios
+ * arriving at {@code rate} per second as a Poisson process, which keeps arriving while the
+ * application slows down. The report shows the throughput, error rate and latency
+ * percentiles of every operation measured after the warm-up, and the time to the first
+ * token of the chat turns.
+ * <p>
+ * Options, as {@code key=value} arguments:
+ * <ul>
+ * <li>{@code target}: application URL, http://localhost:8080 by default</li>
+ * <li>{@code scenario}: {@code chat}, {@code rest} or {@code mixed}</li>
+ * <li>{@code mode}: {@code closed} with {@code concurrency} users, or {@code open} with
+ * {@code rate} arrivals per second and at most {@code max-in-flight} running</li>
+ * <li>{@code duration}, {@code warmup} and {@code think-time}</li>
+ * <li>{@code media}: also call the image, transcription and speech endpoints</li>
+ * <li>{@code cancel-rate}: fraction of conversations ending by cancelling the booking</li>
+ * </ul>
+ */
+public final class LoadGenerator {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static final List<String> CITIES = List.of("Tokyo", "London", "Kuala Lumpur", "Paris", "New York",
+            "Singapore", "Sydney", "Berlin");
+
+    private final String target;
+
+    private final String scenario;
+
+    private final Duration thinkTime;
+
+    private final Duration timeout;
+
+    private final boolean media;
+
+    private final double cancelRate;
+
+    private final HttpClient client;
+
+    private final Map<String, LatencyRecorder> recorders = new ConcurrentHashMap<>();
+
+    private final LongAdder completed = new LongAdder();
+
+    private final LongAdder dropped = new LongAdder();
+
+    private volatile boolean recording;
+
+    private List<Booking> bookings = List.of();
+
+    private record Booking(String number, String firstName, String lastName) {
+    }
+
+    LoadGenerator(Options options) {
+        this.target = options.get("target", "http://localhost:8080");
+        this.scenario = options.get("scenario", "mixed");
+        this.thinkTime = options.getDuration("think-time", Duration.ofSeconds(1));
+        this.timeout = options.getDuration("timeout", Duration.ofSeconds(120));
+        this.media = Boolean.parseBoolean(options.get("media", "false"));
+        this.cancelRate = options.getDouble("cancel-rate", 0);
+        this.client = HttpClient.newBuilder()
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(Duration.ofSeconds(10))
+                .version(HttpClient.Version.HTTP_1_1)
+                .build();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        var options = new Options(args);
+        var generator = new LoadGenerator(options);
+        generator.loadBookings();
+
+        Duration warmup = options.getDuration("warmup", Duration.ofSeconds(10));
+        Duration duration = options.getDuration("duration", Duration.ofSeconds(60));
+        String mode = options.get("mode", "closed");
+        System.out.printf("Running %s scenario against %s, %s model, %d s warm-up, %d s measured%n",
+                generator.scenario, generator.target, mode, warmup.toSeconds(), duration.toSeconds());
+
+        Thread progress = Thread.ofPlatform().daemon().start(generator::printProgress);
+        switch (mode) {
+            case "closed" -> generator.runClosed(options.getInt("concurrency", 20), warmup, duration);
+            case "open" -> generator.runOpen(options.getDouble("rate", 5), options.getInt("max-in-flight", 1000),
+                    warmup, duration);
+            default -> throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+        progress.interrupt();
+        generator.report(duration);
+    }
+
+    private void runClosed(int concurrency, Duration warmup, Duration duration) throws InterruptedException {
+        long start = System.nanoTime();
+        long measureFrom = start + warmup.toNanos();
+        long end = measureFrom + duration.toNanos();
+        List<Thread> users = new ArrayList<>();
+        for (int i = 0; i < concurrency; i++) {
+            users.add(Thread.ofVirtual().start(() -> {
+                while (System.nanoTime() < end) {
+                    recording = System.nanoTime() >= measureFrom;
+                    runScenario();
+                }
+            }));
+        }
+        for (Thread user : users) {
+            user.join(timeout.toMillis() + duration.toMillis() + warmup.toMillis());
+        }
+    }
+
+    private void runOpen(double rate, int maxInFlight, Duration warmup, Duration duration)
+            throws InterruptedException {
+        long start = System.nanoTime();
+        long measureFrom = start + warmup.toNanos();
+        long end = measureFrom + duration.toNanos();
+        var inFlight = new Semaphore(maxInFlight);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            long next = start;
+            while (next < end) {
+                LockSupport.parkNanos(next - System.nanoTime());
+                recording = System.nanoTime() >= measureFrom;
+                if (inFlight.tryAcquire()) {
+                    executor.execute(() -> {
+                        try {
+                            runScenario();
+                        }
+                        finally {
+                            inFlight.release();
+                        }
+                    });
+                }
+                else if (recording) {
+                    dropped.increment();
+                }
+                // Exponential inter-arrival times
+                next += (long) (-Math.log(1 - ThreadLocalRandom.current().nextDouble()) / rate * 1e9);
+            }
+            executor.shutdown();
+            executor.awaitTermination(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void runScenario() {
+        boolean chat = switch (scenario) {
+            case "chat" -> true;
+            case "rest" -> false;
+            default -> ThreadLocalRandom.current().nextBoolean();
+        };
+        if (chat) {
+            conversation();
+        }
+        else {
+            restCall();
+            think();
+        }
+    }
+
+    private void conversation() {
+        String chatId = UUID.randomUUID().toString();
+        Booking booking = bookings.get(ThreadLocalRandom.current().nextInt(bookings.size()));
+        List<String> turns = new ArrayList<>(List.of(
+                "Hi, I need some help with my booking.",
+                "My booking number is %s and my name is %s %s.".formatted(booking.number(), booking.firstName(),
+                        booking.lastName()),
+                "What are the rules for changing a booking?"));
+        turns.add(ThreadLocalRandom.current().nextDouble() < cancelRate
+                ? "Please cancel booking %s.".formatted(booking.number())
+                : "Can you show me booking %s once more?".formatted(booking.number()));
+        for (String turn : turns) {
+            if (!chatTurn(chatId, turn)) {
+                return;
+            }
+            think();
+        }
+    }
+
+    /**
+     * Sends one chat message and reads the streamed answer, returning whether it succeeded.
+     */
+    private boolean chatTurn(String chatId, String message) {
+        boolean measured = recording;
+        long start = System.nanoTime();
+        var request = HttpRequest.newBuilder(URI.create(target + "/assistant/chat?chatId=" + encode(chatId)
+                        + "&message=" + encode(message)))
+                .header("Accept", "text/event-stream")
+                .timeout(timeout)
+                .build();
+        try {
+            HttpResponse<Stream<String>> response = client.send(request,
+                    HttpResponse.BodyHandlers.ofLines());
+            boolean failed = response.statusCode() >= 400;
+            long firstToken = 0;
+            Iterator<String> lines = response.body().iterator();
+            while (lines.hasNext()) {
+                String line = lines.next();
+                if (line.startsWith("event:error")) {
+                    failed = true;
+                }
+                else if (firstToken == 0 && line.startsWith("data:") && line.length() > 5) {
+                    firstToken = System.nanoTime();
+                }
+            }
+            if (failed) {
+                error("chat.turn", measured);
+                return false;
+            }
+            if (measured) {
+                recorder("chat.turn").record(System.nanoTime() - start);
+                if (firstToken != 0) {
+                    recorder("chat.first-token").record(firstToken - start);
+                }
+            }
+            completed.increment();
+            return true;
+        }
+        catch (IOException | RuntimeException e) {
+            error("chat.turn", measured);
+            return false;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void restCall() {
+        String city = encode(CITIES.get(ThreadLocalRandom.current().nextInt(CITIES.size())));
+        List<String> paths = new ArrayList<>(List.of("/simplePrompt", "/promptTemplate?input=" + city,
+                "/outputConverter?input=" + city, "/functionCall?input=" + city, "/memoryAdvisor?input=Hello",
+                "/embedding"));
+        if (media) {
+            paths.addAll(List.of("/image?input=" + encode("A duck"), "/transcription?input=malay", "/speech"));
+        }
+        String path = paths.get(ThreadLocalRandom.current().nextInt(paths.size()));
+        String operation = path.contains("?") ? path.substring(0, path.indexOf('?')) : path;
+        boolean measured = recording;
+        long start = System.nanoTime();
+        var request = HttpRequest.newBuilder(URI.create(target + path)).timeout(timeout).build();
+        try {
+            // Read the whole body, as clients would
+            HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            if (response.statusCode() >= 400) {
+                error(operation, measured);
+                return;
+            }
+            if (measured) {
+                recorder(operation).record(System.nanoTime() - start);
+            }
+            completed.increment();
+        }
+        catch (IOException | RuntimeException e) {
+            error(operation, measured);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reads the bookings of the application through its Hilla endpoint, falling back to the
+     * first demo booking numbers with made up names.
+     */
+    private void loadBookings() {
+        // Hilla checks that the CSRF header matches the cookie
+        String token = UUID.randomUUID().toString();
+        var request = HttpRequest.newBuilder(URI.create(target + "/connect/BookingService/getBookings"))
+                .header("Content-Type", "application/json")
+                .header("X-CSRF-Token", token)
+                .header("Cookie", "csrfToken=" + token)
+                .timeout(timeout)
+                .POST(HttpRequest.BodyPublishers.ofString("{}"))
+                .build();
+        List<Booking> loaded = new ArrayList<>();
+        try {
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() == 200) {
+                for (JsonNode booking : objectMapper.readTree(response.body())) {
+                    loaded.add(new Booking(booking.path("bookingNumber").asText(), booking.path("firstName").asText(),
+                            booking.path("lastName").asText()));
+                }
+            }
+        }
+        catch (IOException e) {
+            System.out.println("Could not load bookings: " + e);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (loaded.isEmpty()) {
+            for (int i = 1; i <= 10; i++) {
+                loaded.add(new Booking("FUN-" + i, "John", "Doe"));
+            }
+        }
+        bookings = loaded;
+        System.out.printf("Using %d bookings%n", bookings.size());
+    }
+
+    private void think() {
+        if (!thinkTime.isZero()) {
+            LockSupport.parkNanos(ThreadLocalRandom.current().nextLong(thinkTime.toNanos() * 2));
+        }
+    }
+
+    private LatencyRecorder recorder(String operation) {
+        return recorders.computeIfAbsent(operation, o -> new LatencyRecorder());
+    }
+
+    private void error(String operation, boolean measured) {
+        if (measured) {
+            recorder(operation).error();
+        }
+        completed.increment();
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private void printProgress() {
+        long last = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(10_000);
+            }
+            catch (InterruptedException e) {
+                return;
+            }
+            long now = completed.sum();
+            System.out.printf("%s: %.1f requests/s%n", recording ? "measuring" : "warming up", (now - last) / 10.0);
+            last = now;
+        }
+    }
+
+    private void report(Duration duration) {
+        double seconds = duration.toMillis() / 1000.0;
+        System.out.println();
+        System.out.printf("%-24s %8s %8s %8s %10s %10s %10s %10s%n", "operation", "count", "req/s", "errors",
+                "p50 ms", "p90 ms", "p99 ms", "max ms");
+        new TreeMap<>(recorders).forEach((operation, recorder) -> {
+            LatencyRecorder.Snapshot snapshot = recorder.snapshot();
+            System.out.printf("%-24s %8d %8.2f %7.2f%% %10.1f %10.1f %10.1f %10.1f%n", operation, snapshot.count(),
+                    snapshot.count() / seconds, snapshot.errorRate() * 100, snapshot.percentile(50),
+                    snapshot.percentile(90), snapshot.percentile(99), snapshot.percentile(100));
+        });
+        if (dropped.sum() > 0) {
+            System.out.printf("%d arrivals dropped, as max-in-flight scenarios were running%n", dropped.sum());
+        }
+    }
+}
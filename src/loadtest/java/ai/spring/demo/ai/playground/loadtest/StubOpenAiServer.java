@@ -0,0 +1,437 @@
+package ai.spring.demo.ai.playground.loadtest;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.imageio.ImageIO;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local OpenAI compatible server for load tests, so that they cost no quota and the
+ * provider's behavior can be chosen.
+ * <p>
+ * It serves chat completions, streamed or not, embeddings, image generations, audio
+ * transcriptions and speech. Chat answers call the booking tools like the real model
+ * would: a user message with a booking number gets its details looked up, or the booking
+ * cancelled when it asks to cancel, and the tool results are then summarized. Everything
+ * else gets a canned answer of {@code answer-tokens} words.
+ * <p>
+ * Options, as {@code key=value} arguments:
+ * <ul>
+ * <li>{@code port}: port to listen on, 8090 by default</li>
+ * <li>{@code latency} and {@code latency-jitter}: time before the first byte of every
+ * response, plus a uniformly random extra up to the jitter</li>
+ * <li>{@code tokens-per-second}: generation speed of chat answers and speech</li>
+ * <li>{@code answer-tokens}: length of the canned answers</li>
+ * <li>{@code error-rate} and {@code error-status}: fraction of requests failed with the
+ * status, 429 by default, like a provider enforcing its quota</li>
+ * </ul>
+ */
+public final class StubOpenAiServer {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static final Pattern BOOKING_NUMBER = Pattern.compile("(?i)\\bFUN-\\d+\\b");
+
+    private static final Pattern NAME = Pattern.compile("(?i)\\bname is (\\p{L}+) (\\p{L}+)");
+
+    private static final String[] WORDS = ("Thank you for contacting Funnair. I am happy to help you with your "
+            + "booking. Could you please provide your booking number, first name and last name so that I can "
+            + "look up the details and check the terms of service for you?").split(" ");
+
+    private static final int EMBEDDING_DIMENSIONS = 1536;
+
+    private final Duration latency;
+
+    private final Duration latencyJitter;
+
+    private final double tokensPerSecond;
+
+    private final int answerTokens;
+
+    private final double errorRate;
+
+    private final int errorStatus;
+
+    private final String baseUrl;
+
+    private final byte[] image;
+
+    private final AtomicLong ids = new AtomicLong();
+
+    private final Map<String, LongAdder> requests = new ConcurrentHashMap<>();
+
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+    private record ToolCall(String name, String arguments) {
+    }
+
+    StubOpenAiServer(Options options) throws IOException {
+        this.latency = options.getDuration("latency", Duration.ofMillis(300));
+        this.latencyJitter = options.getDuration("latency-jitter", Duration.ofMillis(100));
+        this.tokensPerSecond = options.getDouble("tokens-per-second", 50);
+        this.answerTokens = options.getInt("answer-tokens", 40);
+        this.errorRate = options.getDouble("error-rate", 0);
+        this.errorStatus = options.getInt("error-status", 429);
+        this.baseUrl = "http://localhost:" + options.getInt("port", 8090);
+        this.image = image();
+    }
+
+    public static void main(String[] args) throws IOException {
+        var options = new Options(args);
+        var stub = new StubOpenAiServer(options);
+        HttpServer server = HttpServer.create(new InetSocketAddress(options.getInt("port", 8090)), 1024);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/v1/chat/completions", stub.handler("chat", stub::chatCompletions));
+        server.createContext("/v1/embeddings", stub.handler("embeddings", stub::embeddings));
+        server.createContext("/v1/images/generations", stub.handler("images", stub::imageGenerations));
+        server.createContext("/v1/audio/transcriptions", stub.handler("transcriptions", stub::transcriptions));
+        server.createContext("/v1/audio/speech", stub.handler("speech", stub::speech));
+        server.createContext("/files/", stub::file);
+        Runtime.getRuntime().addShutdownHook(new Thread(stub::printSummary));
+        server.start();
+        System.out.printf("Stub OpenAI server listening on %s (latency %d ms +%d ms, %.0f tokens/s, error rate %.3f)%n",
+                stub.baseUrl, stub.latency.toMillis(), stub.latencyJitter.toMillis(), stub.tokensPerSecond,
+                stub.errorRate);
+    }
+
+    private interface Endpoint {
+
+        void handle(HttpExchange exchange, byte[] body) throws IOException, InterruptedException;
+    }
+
+    private HttpHandler handler(String name, Endpoint endpoint) {
+        return exchange -> {
+            requests.computeIfAbsent(name, n -> new LongAdder()).increment();
+            try (exchange) {
+                byte[] body = exchange.getRequestBody().readAllBytes();
+                sleep(latency.plusNanos(latencyJitter.isZero() ? 0
+                        : ThreadLocalRandom.current().nextLong(latencyJitter.toNanos())));
+                if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                    errors.computeIfAbsent(name, n -> new LongAdder()).increment();
+                    sendError(exchange);
+                    return;
+                }
+                endpoint.handle(exchange, body);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            catch (IOException | RuntimeException e) {
+                // Mostly clients going away mid-stream
+                errors.computeIfAbsent(name, n -> new LongAdder()).increment();
+            }
+        };
+    }
+
+    private void chatCompletions(HttpExchange exchange, byte[] body) throws IOException, InterruptedException {
+        JsonNode request = objectMapper.readTree(body);
+        String model = request.path("model").asText("gpt-4o");
+        JsonNode messages = request.path("messages");
+        int promptTokens = body.length / 4;
+        ToolCall toolCall = request.has("tools") ? toolCall(messages) : null;
+        List<String> tokens = toolCall != null ? List.of() : answer(messages);
+        String id = "chatcmpl-" + ids.incrementAndGet();
+
+        if (!request.path("stream").asBoolean()) {
+            sleep(tokenTime(Math.max(1, tokens.size())));
+            ObjectNode message = objectMapper.createObjectNode().put("role", "assistant");
+            if (toolCall != null) {
+                message.putNull("content");
+                message.set("tool_calls", toolCalls(id, toolCall));
+            }
+            else {
+                message.put("content", String.join("", tokens));
+            }
+            ObjectNode response = completion(id, model, "chat.completion");
+            response.putArray("choices").addObject()
+                    .put("index", 0)
+                    .put("finish_reason", toolCall != null ? "tool_calls" : "stop")
+                    .set("message", message);
+            response.putObject("usage")
+                    .put("prompt_tokens", promptTokens)
+                    .put("completion_tokens", tokens.size())
+                    .put("total_tokens", promptTokens + tokens.size());
+            sendJson(exchange, response);
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        if (toolCall != null) {
+            ObjectNode delta = objectMapper.createObjectNode().put("role", "assistant");
+            delta.set("tool_calls", toolCalls(id, toolCall));
+            sendChunk(out, id, model, delta, null);
+            sendChunk(out, id, model, objectMapper.createObjectNode(), "tool_calls");
+        }
+        else {
+            for (int i = 0; i < tokens.size(); i++) {
+                ObjectNode delta = objectMapper.createObjectNode().put("content", tokens.get(i));
+                if (i == 0) {
+                    delta.put("role", "assistant");
+                }
+                sendChunk(out, id, model, delta, null);
+                sleep(tokenTime(1));
+            }
+            sendChunk(out, id, model, objectMapper.createObjectNode(), "stop");
+        }
+        if (request.path("stream_options").path("include_usage").asBoolean()) {
+            ObjectNode usage = completion(id, model, "chat.completion.chunk");
+            usage.putArray("choices");
+            usage.putObject("usage")
+                    .put("prompt_tokens", promptTokens)
+                    .put("completion_tokens", tokens.size())
+                    .put("total_tokens", promptTokens + tokens.size());
+            out.write(("data: " + objectMapper.writeValueAsString(usage) + "\n\n").getBytes(StandardCharsets.UTF_8));
+        }
+        out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    /**
+     * Returns the tool a model would call for the last message, if any.
+     */
+    private static ToolCall toolCall(JsonNode messages) {
+        JsonNode last = messages.path(messages.size() - 1);
+        if (!"user".equals(last.path("role").asText())) {
+            return null;
+        }
+        String text = content(last);
+        Matcher bookingNumber = BOOKING_NUMBER.matcher(text);
+        if (!bookingNumber.find()) {
+            return null;
+        }
+        // The names may have been given in an earlier turn
+        String firstName = null;
+        String lastName = null;
+        for (JsonNode message : messages) {
+            Matcher name = NAME.matcher(content(message));
+            if ("user".equals(message.path("role").asText()) && name.find()) {
+                firstName = name.group(1);
+                lastName = name.group(2);
+            }
+        }
+        ObjectNode arguments = objectMapper.createObjectNode()
+                .put("bookingNumber", bookingNumber.group())
+                .put("firstName", firstName)
+                .put("lastName", lastName);
+        return new ToolCall(text.toLowerCase().contains("cancel") ? "cancelBooking" : "getBookingDetails",
+                arguments.toString());
+    }
+
+    private List<String> answer(JsonNode messages) {
+        JsonNode last = messages.path(messages.size() - 1);
+        List<String> tokens = new ArrayList<>();
+        if ("tool".equals(last.path("role").asText())) {
+            String result = content(last);
+            tokens.add("Here is what I found: ");
+            for (String word : result.substring(0, Math.min(result.length(), 200)).split("(?<=[ ,])")) {
+                tokens.add(word);
+            }
+            return tokens;
+        }
+        for (int i = 0; i < answerTokens; i++) {
+            tokens.add((i == 0 ? "" : " ") + WORDS[i % WORDS.length]);
+        }
+        return tokens;
+    }
+
+    private static String content(JsonNode message) {
+        JsonNode content = message.path("content");
+        if (content.isArray()) {
+            var text = new StringBuilder();
+            content.forEach(part -> text.append(part.path("text").asText("")));
+            return text.toString();
+        }
+        return content.asText("");
+    }
+
+    private ArrayNode toolCalls(String id, ToolCall toolCall) {
+        ArrayNode calls = objectMapper.createArrayNode();
+        calls.addObject()
+                .put("index", 0)
+                .put("id", "call_" + id)
+                .put("type", "function")
+                .putObject("function")
+                .put("name", toolCall.name())
+                .put("arguments", toolCall.arguments());
+        return calls;
+    }
+
+    private ObjectNode completion(String id, String model, String object) {
+        return objectMapper.createObjectNode()
+                .put("id", id)
+                .put("object", object)
+                .put("created", System.currentTimeMillis() / 1000)
+                .put("model", model);
+    }
+
+    private void sendChunk(OutputStream out, String id, String model, ObjectNode delta, String finishReason)
+            throws IOException {
+        ObjectNode chunk = completion(id, model, "chat.completion.chunk");
+        ObjectNode choice = chunk.putArray("choices").addObject().put("index", 0);
+        choice.set("delta", delta);
+        if (finishReason != null) {
+            choice.put("finish_reason", finishReason);
+        }
+        else {
+            choice.putNull("finish_reason");
+        }
+        out.write(("data: " + objectMapper.writeValueAsString(chunk) + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private void embeddings(HttpExchange exchange, byte[] body) throws IOException {
+        JsonNode request = objectMapper.readTree(body);
+        List<String> inputs = new ArrayList<>();
+        if (request.path("input").isArray()) {
+            request.path("input").forEach(input -> inputs.add(input.asText()));
+        }
+        else {
+            inputs.add(request.path("input").asText());
+        }
+        ObjectNode response = objectMapper.createObjectNode()
+                .put("object", "list")
+                .put("model", request.path("model").asText("text-embedding-ada-002"));
+        ArrayNode data = response.putArray("data");
+        int tokens = 0;
+        for (int i = 0; i < inputs.size(); i++) {
+            ArrayNode embedding = data.addObject()
+                    .put("object", "embedding")
+                    .put("index", i)
+                    .putArray("embedding");
+            // Deterministic, so that equal texts are similar and retrieval still works
+            var random = new SplittableRandom(inputs.get(i).hashCode());
+            double[] vector = new double[EMBEDDING_DIMENSIONS];
+            double norm = 0;
+            for (int d = 0; d < vector.length; d++) {
+                vector[d] = random.nextDouble(-1, 1);
+                norm += vector[d] * vector[d];
+            }
+            for (double value : vector) {
+                embedding.add(value / Math.sqrt(norm));
+            }
+            tokens += inputs.get(i).length() / 4;
+        }
+        response.putObject("usage").put("prompt_tokens", tokens).put("total_tokens", tokens);
+        sendJson(exchange, response);
+    }
+
+    private void imageGenerations(HttpExchange exchange, byte[] body) throws IOException {
+        ObjectNode response = objectMapper.createObjectNode().put("created", System.currentTimeMillis() / 1000);
+        response.putArray("data").addObject().put("url", baseUrl + "/files/image-" + ids.incrementAndGet() + ".jpg");
+        sendJson(exchange, response);
+    }
+
+    private void transcriptions(HttpExchange exchange, byte[] body) throws IOException {
+        String text = "Selamat pagi, would you like coffee or tea?";
+        // Multipart form, the response format is a plain field
+        if (new String(body, StandardCharsets.ISO_8859_1).matches("(?s).*name=\"response_format\"\\s+text\\b.*")) {
+            sendBody(exchange, "text/plain", text.getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        sendJson(exchange, objectMapper.createObjectNode().put("text", text));
+    }
+
+    private void speech(HttpExchange exchange, byte[] body) throws IOException, InterruptedException {
+        JsonNode request = objectMapper.readTree(body);
+        // About one 1 KB chunk of audio per word, streamed at the generation speed
+        int chunks = Math.max(1, request.path("input").asText().split("\\s+").length);
+        exchange.getResponseHeaders().set("Content-Type", "audio/mpeg");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        byte[] chunk = new byte[1024];
+        for (int i = 0; i < chunks; i++) {
+            ThreadLocalRandom.current().nextBytes(chunk);
+            out.write(chunk);
+            out.flush();
+            sleep(tokenTime(1));
+        }
+    }
+
+    private void file(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            exchange.getRequestBody().readAllBytes();
+            sendBody(exchange, "image/jpeg", image);
+        }
+    }
+
+    private void sendError(HttpExchange exchange) throws IOException {
+        ObjectNode error = objectMapper.createObjectNode();
+        error.putObject("error")
+                .put("message", errorStatus == 429 ? "Rate limit reached (stub)" : "Server error (stub)")
+                .put("type", errorStatus == 429 ? "requests" : "server_error")
+                .put("code", errorStatus == 429 ? "rate_limit_exceeded" : "server_error");
+        if (errorStatus == 429) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+        }
+        byte[] bytes = objectMapper.writeValueAsBytes(error);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(errorStatus, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private static void sendJson(HttpExchange exchange, JsonNode json) throws IOException {
+        sendBody(exchange, "application/json", objectMapper.writeValueAsBytes(json));
+    }
+
+    private static void sendBody(HttpExchange exchange, String contentType, byte[] bytes) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private Duration tokenTime(int tokens) {
+        return tokensPerSecond <= 0 ? Duration.ZERO : Duration.ofNanos((long) (tokens * 1e9 / tokensPerSecond));
+    }
+
+    private static void sleep(Duration duration) throws InterruptedException {
+        if (!duration.isZero()) {
+            Thread.sleep(duration);
+        }
+    }
+
+    private static byte[] image() throws IOException {
+        var image = new BufferedImage(256, 256, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(new Color(0x1f6feb));
+        graphics.fillRect(0, 0, 256, 256);
+        graphics.setColor(Color.WHITE);
+        graphics.drawString("stub", 112, 132);
+        graphics.dispose();
+        var out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        return out.toByteArray();
+    }
+
+    private void printSummary() {
+        requests.forEach((endpoint, count) -> System.out.printf("%-16s %8d requests %6d errors%n", endpoint,
+                count.sum(), errors.getOrDefault(endpoint, new LongAdder()).sum()));
+    }
+}
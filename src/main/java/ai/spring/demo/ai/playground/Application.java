@@ -1,25 +1,51 @@
 package ai.spring.demo.ai.playground;
 
+import ai.spring.demo.ai.playground.data.BookingStore;
+import ai.spring.demo.ai.playground.embedding.BatchingEmbeddingModel;
+import ai.spring.demo.ai.playground.embedding.CachingEmbeddingModel;
+import ai.spring.demo.ai.playground.http.ModelHttpTransport;
+import ai.spring.demo.ai.playground.memory.BoundedChatMemory;
+import ai.spring.demo.ai.playground.memory.PersistentChatMemory;
+import ai.spring.demo.ai.playground.memory.SummarizingChatMemory;
+import ai.spring.demo.ai.playground.vectorstore.EmbeddingSnapshot;
+import ai.spring.demo.ai.playground.vectorstore.HnswVectorStore;
+import ai.spring.demo.ai.playground.vectorstore.OffHeapVectorStore;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.chat.memory.ChatMemory;
-import org.springframework.ai.chat.memory.InMemoryChatMemory;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.document.Document;
 import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.openai.OpenAiEmbeddingModel;
+import org.springframework.ai.openai.api.OpenAiAudioApi;
 import org.springframework.ai.reader.TextReader;
+import org.springframework.ai.retry.RetryUtils;
 import org.springframework.ai.transformer.splitter.TokenTextSplitter;
-import org.springframework.ai.vectorstore.SimpleVectorStore;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.client.RestClientCustomizer;
+import org.springframework.boot.web.reactive.function.client.WebClientCustomizer;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
 import org.springframework.core.io.Resource;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.reactive.function.client.WebClient;
 
 import com.vaadin.flow.component.page.AppShellConfigurator;
 import com.vaadin.flow.theme.Theme;
 
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
 import java.util.function.Function;
+import java.util.regex.Pattern;
 
 @SpringBootApplication
 @Theme(value = "customer-support-agent")
@@ -36,28 +62,167 @@ public class Application implements AppShellConfigurator {
 	@Bean
 	CommandLineRunner ingestTermOfServiceToVectorStore(
 			EmbeddingModel embeddingModel, VectorStore vectorStore,
-			@Value("classpath:rag/terms-of-service.txt") Resource termsOfServiceDocs) {
+			@Value("classpath:rag/terms-of-service.txt") Resource termsOfServiceDocs,
+			@Value("${playground.vectorstore.embedding-snapshot:data/embeddings.bin}") Path embeddingSnapshot,
+			@Value("${spring.ai.openai.embedding.options.model:text-embedding-ada-002}") String embeddingModelId,
+			@Value("${playground.vectorstore.warm-up:false}") boolean warmUp) {
 
 		return args -> {
+			long start = System.nanoTime();
+			// Content hashes as ids, so that re-ingesting a chunk replaces it
+			List<Document> chunks = new TokenTextSplitter().transform(new TextReader(termsOfServiceDocs).read())
+				.stream()
+				.map(chunk -> new Document(EmbeddingSnapshot.contentHash(chunk.getContent()), chunk.getContent(),
+						chunk.getMetadata()))
+				.toList();
+
+			// Only embed the chunks that are not in the snapshot yet
+			EmbeddingSnapshot snapshot = EmbeddingSnapshot.open(embeddingSnapshot, embeddingModelId);
+			List<Document> missing = snapshot.restore(chunks);
+			if (!missing.isEmpty()) {
+				List<List<Double>> embeddings = embeddingModel.embed(missing.stream().map(Document::getContent).toList());
+				for (int i = 0; i < missing.size(); i++) {
+					missing.get(i).setEmbedding(embeddings.get(i));
+				}
+			}
+			if (!missing.isEmpty() || snapshot.size() != chunks.size()) {
+				snapshot.write(chunks);
+			}
+
 			// Ingest the document into the vector store
-			vectorStore.write(
-					new TokenTextSplitter().transform(
-							new TextReader(termsOfServiceDocs).read()));
+			vectorStore.write(chunks);
+			logger.info("Ingested {} chunks ({} embedded, {} from snapshot) in {} ms", chunks.size(), missing.size(),
+					chunks.size() - missing.size(), (System.nanoTime() - start) / 1_000_000);
+
+			if (warmUp) {
+				vectorStore.similaritySearch("Bookings").forEach(doc -> {
+					logger.info("Similar Document: {}", doc.getContent());
+				});
+			}
+		};
+	}
 
-			vectorStore.similaritySearch("Bookings").forEach(doc -> {
-				logger.info("Similar Document: {}", doc.getContent());
-			});
+	@Bean
+	public VectorStore vectorStore(EmbeddingModel embeddingModel,
+			@Value("${playground.vectorstore.type:flat}") String type,
+			@Value("${playground.vectorstore.hnsw.m:16}") int m,
+			@Value("${playground.vectorstore.hnsw.ef-construction:200}") int efConstruction,
+			@Value("${playground.vectorstore.hnsw.ef-search:64}") int efSearch) {
+		return switch (type) {
+			case "flat" -> new OffHeapVectorStore(embeddingModel);
+			case "hnsw" -> new HnswVectorStore(embeddingModel, m, efConstruction, efSearch);
+			default -> throw new IllegalArgumentException("Unknown vector store type: " + type);
 		};
 	}
 
+	// Every EmbeddingModel injection point, including the vector store, goes through the cache
+	@Bean(destroyMethod = "close")
+	@Primary
+	public EmbeddingModel cachingEmbeddingModel(BatchingEmbeddingModel batchingEmbeddingModel,
+			@Value("${spring.ai.openai.embedding.options.model:text-embedding-ada-002}") String model,
+			@Value("${playground.embedding.cache.maximum-size:10000}") long maximumSize,
+			@Value("${playground.embedding.cache.disk-directory:}") String diskDirectory,
+			MeterRegistry meterRegistry) {
+		return new CachingEmbeddingModel(batchingEmbeddingModel, model, maximumSize,
+				diskDirectory.isEmpty() ? null : Path.of(diskDirectory), meterRegistry);
+	}
+
+	// Cache misses of concurrent calls are coalesced into shared provider requests
+	@Bean(destroyMethod = "close")
+	public BatchingEmbeddingModel batchingEmbeddingModel(OpenAiEmbeddingModel openAiEmbeddingModel,
+			@Value("${playground.embedding.batch.window:5ms}") Duration window,
+			@Value("${playground.embedding.batch.max-size:256}") int maxBatchSize,
+			@Value("${playground.embedding.batch.max-tokens:300000}") int maxBatchTokens,
+			MeterRegistry meterRegistry) {
+		return new BatchingEmbeddingModel(openAiEmbeddingModel, window, maxBatchSize, maxBatchTokens, meterRegistry);
+	}
+
+	@Bean(destroyMethod = "close")
+	public BoundedChatMemory boundedChatMemory(
+			@Value("${playground.chat.memory.max-messages:100}") int maxMessages,
+			@Value("${playground.chat.memory.idle-timeout:30m}") Duration idleTimeout,
+			@Value("${playground.chat.memory.max-size:64MB}") DataSize maxSize,
+			MeterRegistry meterRegistry) {
+		return new BoundedChatMemory(maxMessages, idleTimeout, maxSize.toBytes(), meterRegistry);
+	}
+
+	// Hot conversations stay in the bounded memory, evicted ones are reloaded from the log
+	@Bean(destroyMethod = "close")
+	@ConditionalOnProperty(name = "playground.chat.memory.persistence.enabled", havingValue = "true")
+	public PersistentChatMemory persistentChatMemory(BoundedChatMemory boundedChatMemory,
+			@Value("${playground.chat.memory.persistence.directory:data/chat-memory}") Path directory,
+			@Value("${playground.chat.memory.max-messages:100}") int maxMessages,
+			@Value("${playground.chat.memory.persistence.segment-size:16MB}") DataSize segmentSize,
+			@Value("${playground.chat.memory.persistence.compact-after-segments:8}") int compactAfterSegments,
+			@Value("${playground.chat.memory.persistence.retention:30d}") Duration retention,
+			MeterRegistry meterRegistry) {
+		return new PersistentChatMemory(boundedChatMemory, directory, maxMessages, segmentSize.toBytes(),
+				compactAfterSegments, retention, meterRegistry);
+	}
+
+	@Bean
+	@Primary
+	public ChatMemory chatMemory(BoundedChatMemory boundedChatMemory,
+			ObjectProvider<PersistentChatMemory> persistentChatMemory, ChatModel chatModel,
+			@Value("${playground.chat.memory.summary.enabled:false}") boolean summaryEnabled,
+			@Value("${playground.chat.memory.summary.keep-messages:10}") int keepMessages,
+			@Value("${playground.chat.memory.summary.fold-messages:10}") int foldMessages,
+			@Value("${playground.chat.memory.summary.pinned-patterns:}") List<String> pinnedPatterns,
+			@Value("${playground.chat.memory.idle-timeout:30m}") Duration idleTimeout,
+			MeterRegistry meterRegistry) {
+		PersistentChatMemory persistent = persistentChatMemory.getIfAvailable();
+		ChatMemory memory = persistent != null ? persistent : boundedChatMemory;
+		if (!summaryEnabled) {
+			return memory;
+		}
+		return new SummarizingChatMemory(memory, chatModel, keepMessages, foldMessages,
+				pinnedPatterns.stream().filter(pattern -> !pattern.isBlank()).map(Pattern::compile).toList(),
+				idleTimeout, meterRegistry);
+	}
+
+	@Bean(destroyMethod = "close")
+	@ConditionalOnProperty(name = "playground.booking.store.enabled", havingValue = "true", matchIfMissing = true)
+	public BookingStore bookingStore(
+			@Value("${playground.booking.store.directory:data/bookings}") Path directory,
+			@Value("${playground.booking.store.snapshot-interval:5m}") Duration snapshotInterval) {
+		return new BookingStore(directory, snapshotInterval);
+	}
+
+	@Bean(destroyMethod = "close")
+	public ModelHttpTransport modelHttpTransport(
+			@Value("${playground.http.max-connections:200}") int maxConnections,
+			@Value("${playground.http.max-connections-per-host:50}") int maxConnectionsPerHost,
+			@Value("${playground.http.connect-timeout:5s}") Duration connectTimeout,
+			@Value("${playground.http.read-timeout:2m}") Duration readTimeout,
+			@Value("${playground.http.stream-idle-timeout:60s}") Duration streamIdleTimeout,
+			@Value("${playground.http.acquire-timeout:10s}") Duration acquireTimeout,
+			@Value("${playground.http.max-idle-time:30s}") Duration maxIdleTime,
+			@Value("${playground.http.max-life-time:5m}") Duration maxLifeTime,
+			@Value("${playground.http.http2:true}") boolean http2,
+			MeterRegistry meterRegistry) {
+		return new ModelHttpTransport(maxConnections, maxConnectionsPerHost, connectTimeout, readTimeout,
+				streamIdleTimeout, acquireTimeout, maxIdleTime, maxLifeTime, http2, meterRegistry);
+	}
+
+	// Applied to the builders Spring AI builds the model clients with, and so shared by all
+	@Bean
+	public RestClientCustomizer modelRestClientCustomizer(ModelHttpTransport modelHttpTransport) {
+		return builder -> builder.requestFactory(modelHttpTransport.requestFactory());
+	}
+
 	@Bean
-	public VectorStore vectorStore(EmbeddingModel embeddingModel) {
-		return new SimpleVectorStore(embeddingModel);
+	public WebClientCustomizer modelWebClientCustomizer(ModelHttpTransport modelHttpTransport) {
+		return builder -> builder.clientConnector(modelHttpTransport.connector());
 	}
 
+	// One client for speech, on the application's HTTP clients, rather than one per call
 	@Bean
-	public ChatMemory chatMemory() {
-		return new InMemoryChatMemory();
+	public OpenAiAudioApi openAiAudioApi(
+			@Value("${spring.ai.openai.audio.speech.base-url:${spring.ai.openai.base-url:https://api.openai.com}}") String baseUrl,
+			@Value("${spring.ai.openai.audio.speech.api-key:${spring.ai.openai.api-key}}") String apiKey,
+			RestClient.Builder restClientBuilder, WebClient.Builder webClientBuilder) {
+		return new OpenAiAudioApi(baseUrl, apiKey, restClientBuilder, webClientBuilder,
+				RetryUtils.DEFAULT_RESPONSE_ERROR_HANDLER);
 	}
 
 	@Bean
@@ -0,0 +1,165 @@
+package ai.spring.demo.ai.playground.cache;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import ai.spring.demo.ai.playground.metrics.ModelMetrics;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.function.FunctionCallingOptions;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.util.CollectionUtils;
+
+/**
+ * Cache of chat model answers for stateless prompts.
+ * <p>
+ * Answers are cached by model, options and the rendered messages of the prompt, with a
+ * time to live and a maximum number of entries. Concurrent identical prompts share one
+ * upstream call. Prompts with functions are never cached, as the functions return live
+ * data.
+ * <p>
+ * Besides the {@code chat-responses} cache metrics, the upstream time avoided by hits is
+ * recorded in {@code playground.chat.cache.saved}. The tokens of upstream calls are recorded with the
+ * {@code chat-response-cache} endpoint of the {@link ModelMetrics}.
+ */
+@Component
+public class ChatResponseCache {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final ChatModel chatModel;
+
+    private final ModelMetrics modelMetrics;
+
+    private final AsyncCache<Key, Answer> cache;
+
+    private final Timer upstream;
+
+    private final Counter saved;
+
+    private record Key(String model, String options, String messages) {
+    }
+
+    private record Answer(String content, long upstreamNanos) {
+    }
+
+    public ChatResponseCache(ChatModel chatModel, ModelMetrics modelMetrics, MeterRegistry meterRegistry,
+            @Value("${playground.chat.cache.ttl:1h}") Duration ttl,
+            @Value("${playground.chat.cache.maximum-size:1000}") long maximumSize) {
+        this.chatModel = chatModel;
+        this.modelMetrics = modelMetrics;
+        Executor executor = Executors.newVirtualThreadPerTaskExecutor();
+        this.cache = CaffeineCacheMetrics.monitor(meterRegistry, Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl)
+                .executor(executor)
+                .recordStats()
+                .buildAsync(), "chat-responses");
+        this.upstream = Timer.builder("playground.chat.cache.upstream")
+                .description("Chat model calls made on cache misses")
+                .register(meterRegistry);
+        this.saved = Counter.builder("playground.chat.cache.saved")
+                .description("Upstream time avoided by cache hits")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns the content of the answer to a single user message.
+     */
+    public String call(String userMessage) {
+        return call(new Prompt(userMessage));
+    }
+
+    /**
+     * Returns the content of the answer to {@code prompt}, from the cache if possible.
+     */
+    public String call(Prompt prompt) {
+        if (usesFunctions(prompt.getOptions())) {
+            ChatResponse response = chatModel.call(prompt);
+            modelMetrics.recordUsage("chat-response-cache", response);
+            return response.getResult().getOutput().getContent();
+        }
+        Key key = key(prompt);
+        boolean[] loaded = { false };
+        CompletableFuture<Answer> answer = cache.get(key, (k, executor) -> {
+            loaded[0] = true;
+            return CompletableFuture.supplyAsync(() -> load(prompt), executor);
+        });
+        try {
+            Answer result = answer.join();
+            if (!loaded[0]) {
+                saved.increment(result.upstreamNanos() / 1e9);
+            }
+            return result.content();
+        }
+        catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private Answer load(Prompt prompt) {
+        long start = System.nanoTime();
+        ChatResponse response = upstream.record(() -> chatModel.call(prompt));
+        modelMetrics.recordUsage("chat-response-cache", response);
+        return new Answer(response.getResult().getOutput().getContent(), System.nanoTime() - start);
+    }
+
+    private static boolean usesFunctions(@Nullable ChatOptions options) {
+        return options instanceof FunctionCallingOptions functionOptions
+                && (!CollectionUtils.isEmpty(functionOptions.getFunctions())
+                        || !CollectionUtils.isEmpty(functionOptions.getFunctionCallbacks()));
+    }
+
+    private Key key(Prompt prompt) {
+        var messages = new StringBuilder();
+        for (Message message : prompt.getInstructions()) {
+            messages.append(message.getMessageType().getValue()).append(": ").append(message.getContent()).append('\n');
+        }
+        ChatOptions options = prompt.getOptions();
+        return new Key(model(options), json(options), messages.toString());
+    }
+
+    private String model(@Nullable ChatOptions options) {
+        if (options instanceof OpenAiChatOptions openAiOptions && openAiOptions.getModel() != null) {
+            return openAiOptions.getModel();
+        }
+        if (chatModel.getDefaultOptions() instanceof OpenAiChatOptions defaults && defaults.getModel() != null) {
+            return defaults.getModel();
+        }
+        return "default";
+    }
+
+    private static String json(@Nullable ChatOptions options) {
+        if (options == null) {
+            return "";
+        }
+        try {
+            return objectMapper.writeValueAsString(options);
+        }
+        catch (JsonProcessingException e) {
+            return options.toString();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package ai.spring.demo.ai.playground.cache;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import ai.spring.demo.ai.playground.vectorstore.VectorMath;
+import ai.spring.demo.ai.playground.vectorstore.VersionedVectorStore;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import org.springframework.ai.chat.client.AdvisedRequest;
+import org.springframework.ai.chat.client.RequestResponseAdvisor;
+import org.springframework.ai.chat.client.advisor.QuestionAnswerAdvisor;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import static org.springframework.ai.chat.client.advisor.AbstractChatMemoryAdvisor.CHAT_MEMORY_CONVERSATION_ID_KEY;
+import static org.springframework.ai.chat.client.advisor.AbstractChatMemoryAdvisor.DEFAULT_CHAT_MEMORY_CONVERSATION_ID;
+
+/**
+ * Retrieval augmentation like {@link QuestionAnswerAdvisor}, reusing the documents retrieved
+ * for the previous turn of a conversation.
+ * <p>
+ * Every turn embeds the user text once. If it is at least {@code reuseThreshold} similar to
+ * the query the conversation's documents were last retrieved for, and the vector store did
+ * not change since, the documents are reused without searching. Follow-up turns like "my
+ * name is..." or "yes, I consent" mostly stay on the same terms of service chunks. With a
+ * {@link VersionedVectorStore} the search uses the embedding directly and results are
+ * invalidated by the store version; other stores embed the query again and are assumed not
+ * to change.
+ * <p>
+ * Decisions are counted in {@code playground.rag.retrievals} with a {@code decision} tag of
+ * {@code reuse}, {@code search} or {@code stale}, and the similarity to the previous query
+ * is recorded by {@code playground.rag.query.similarity} for tuning the threshold.
+ */
+@Component
+public class ConversationRetrievalAdvisor implements RequestResponseAdvisor {
+
+    private static final String USER_TEXT_ADVISE = """
+
+            Context information is below.
+            ---------------------
+            {question_answer_context}
+            ---------------------
+            Given the context and provided history information and not prior knowledge,
+            reply to the user comment. If the answer is not in the context, inform
+            the user that you can't answer the question.
+            """;
+
+    private final VectorStore vectorStore;
+
+    private final EmbeddingModel embeddingModel;
+
+    private final int topK;
+
+    private final double similarityThreshold;
+
+    private final double reuseThreshold;
+
+    private final Cache<String, Retrieval> retrievals;
+
+    private final Counter reused;
+
+    private final Counter searched;
+
+    private final Counter stale;
+
+    private final DistributionSummary querySimilarity;
+
+    private final Timer search;
+
+    private record Retrieval(float[] query, long version, List<Document> documents) {
+    }
+
+    public ConversationRetrievalAdvisor(VectorStore vectorStore, EmbeddingModel embeddingModel,
+            MeterRegistry meterRegistry,
+            @Value("${playground.rag.top-k:4}") int topK,
+            @Value("${playground.rag.similarity-threshold:0.0}") double similarityThreshold,
+            @Value("${playground.rag.reuse-threshold:0.9}") double reuseThreshold,
+            @Value("${playground.rag.cache.maximum-size:10000}") long maximumSize,
+            @Value("${playground.chat.memory.idle-timeout:30m}") Duration idleTimeout) {
+        this.vectorStore = vectorStore;
+        this.embeddingModel = embeddingModel;
+        this.topK = topK;
+        this.similarityThreshold = similarityThreshold;
+        this.reuseThreshold = reuseThreshold;
+        this.retrievals = CaffeineCacheMetrics.monitor(meterRegistry, Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterAccess(idleTimeout)
+                .recordStats()
+                .<String, Retrieval>build(), "retrievals");
+        this.reused = Counter.builder("playground.rag.retrievals").tag("decision", "reuse").register(meterRegistry);
+        this.searched = Counter.builder("playground.rag.retrievals").tag("decision", "search").register(meterRegistry);
+        this.stale = Counter.builder("playground.rag.retrievals").tag("decision", "stale").register(meterRegistry);
+        this.querySimilarity = DistributionSummary.builder("playground.rag.query.similarity")
+                .description("Similarity of a query to the one the conversation's documents were retrieved for")
+                .register(meterRegistry);
+        this.search = Timer.builder("playground.rag.search")
+                .description("Vector store searches")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public AdvisedRequest adviseRequest(AdvisedRequest request, Map<String, Object> context) {
+        String conversationId = String.valueOf(
+                context.getOrDefault(CHAT_MEMORY_CONVERSATION_ID_KEY, DEFAULT_CHAT_MEMORY_CONVERSATION_ID));
+        List<Document> documents = retrieve(conversationId, request.userText());
+        context.put(QuestionAnswerAdvisor.RETRIEVED_DOCUMENTS, documents);
+
+        Map<String, Object> userParams = new HashMap<>(request.userParams());
+        userParams.put("question_answer_context",
+                documents.stream().map(Document::getContent).collect(Collectors.joining(System.lineSeparator())));
+        return AdvisedRequest.from(request)
+                .withUserText(request.userText() + USER_TEXT_ADVISE)
+                .withUserParams(userParams)
+                .build();
+    }
+
+    private List<Document> retrieve(String conversationId, String userText) {
+        float[] query = VectorMath.normalize(embeddingModel.embed(userText));
+        long version = vectorStore instanceof VersionedVectorStore versioned ? versioned.version() : 0;
+        Retrieval previous = retrievals.getIfPresent(conversationId);
+        Counter decision = searched;
+        if (previous != null && previous.query().length == query.length) {
+            if (previous.version() != version) {
+                decision = stale;
+            }
+            else {
+                double similarity = VectorMath.dot(query, previous.query(), query.length);
+                querySimilarity.record(similarity);
+                if (similarity >= reuseThreshold) {
+                    reused.increment();
+                    return previous.documents();
+                }
+            }
+        }
+        decision.increment();
+        List<Document> documents = search.record(() -> vectorStore instanceof VersionedVectorStore versioned
+                ? versioned.search(query, topK, similarityThreshold)
+                : vectorStore.similaritySearch(SearchRequest.query(userText)
+                        .withTopK(topK)
+                        .withSimilarityThreshold(similarityThreshold)));
+        // Anchored at the searched query, so that many small steps cannot drift away from it
+        retrievals.put(conversationId, new Retrieval(query, version, List.copyOf(documents)));
+        return documents;
+    }
+}
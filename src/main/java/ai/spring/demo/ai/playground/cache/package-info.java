@@ -0,0 +1,4 @@
+@NonNullApi
+package ai.spring.demo.ai.playground.cache;
+
+import org.springframework.lang.NonNullApi;
@@ -1,5 +1,6 @@
 package ai.spring.demo.ai.playground.client;
 
+import ai.spring.demo.ai.playground.services.ChatAdmission;
 import ai.spring.demo.ai.playground.services.CustomerSupportAssistant;
 import com.vaadin.flow.server.auth.AnonymousAllowed;
 import com.vaadin.hilla.BrowserCallable;
@@ -12,11 +13,14 @@ public class AssistantService {
 
     private final CustomerSupportAssistant agent;
 
-    public AssistantService(CustomerSupportAssistant agent) {
+    private final ChatAdmission admission;
+
+    public AssistantService(CustomerSupportAssistant agent, ChatAdmission admission) {
         this.agent = agent;
+        this.admission = admission;
     }
 
     public Flux<String> chat(String chatId, String userMessage) {
-        return agent.chat(chatId, userMessage);
+        return admission.admit(chatId, () -> agent.chat(chatId, userMessage));
     }
 }
@@ -0,0 +1,29 @@
+package ai.spring.demo.ai.playground.controller;
+
+import ai.spring.demo.ai.playground.client.AssistantService;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+
+/**
+ * The support chat of {@link AssistantService} as server-sent events, for clients that do
+ * not speak the Hilla push protocol, like the load generator.
+ */
+@RestController
+@ConditionalOnProperty(name = "playground.assistant.sse.enabled", havingValue = "true")
+public class AssistantController {
+    private final AssistantService assistantService;
+
+    public AssistantController(AssistantService assistantService) {
+        this.assistantService = assistantService;
+    }
+
+    @GetMapping(value = "/assistant/chat", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<String> chat(@RequestParam String chatId, @RequestParam String message) {
+        return assistantService.chat(chatId, message);
+    }
+    //localhost:8080/assistant/chat?chatId=1&message=Hello
+}
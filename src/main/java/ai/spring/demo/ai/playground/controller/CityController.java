@@ -1,10 +1,12 @@
 package ai.spring.demo.ai.playground.controller;
 
+import ai.spring.demo.ai.playground.cache.ChatResponseCache;
+import ai.spring.demo.ai.playground.metrics.ModelMetrics;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.client.advisor.PromptChatMemoryAdvisor;
 import org.springframework.ai.chat.memory.ChatMemory;
-import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.ai.chat.messages.*;
+import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.chat.prompt.PromptTemplate;
 import org.springframework.ai.chat.prompt.SystemPromptTemplate;
@@ -31,20 +33,31 @@ public class CityController {
     private final OpenAiChatModel chatModel;
     private final ChatClient chatClient;
     private final ChatMemory chatMemory;
+    private final ChatResponseCache responseCache;
+    private final ModelMetrics modelMetrics;
 
     public CityController(
             OpenAiChatModel chatModel,
             ChatClient.Builder chatClientBuilder,
-            ChatMemory chatMemory) {
+            ChatMemory chatMemory,
+            ChatResponseCache responseCache,
+            ModelMetrics modelMetrics) {
         this.chatModel = chatModel;
         this.chatMemory = chatMemory;
-        this.chatClient = chatClientBuilder.defaultAdvisors(new PromptChatMemoryAdvisor(chatMemory)).build();
+        this.responseCache = responseCache;
+        this.modelMetrics = modelMetrics;
+        this.chatClient = chatClientBuilder
+                .defaultAdvisors(modelMetrics.timed("memory", new PromptChatMemoryAdvisor(chatMemory)))
+                .build();
     }
 
     @GetMapping("/simplePrompt")
     public ResponseEntity<String> getCity() {
-        //client call (inline prompt)
-        return ResponseEntity.ok(chatModel.call("Give me a name of a random city in Malaysia."));
+        //client call (inline prompt), not cached as the answer is meant to be random
+        ChatResponse response = modelMetrics.call("simplePrompt",
+                () -> chatModel.call(new Prompt("Give me a name of a random city in Malaysia.")));
+        modelMetrics.recordUsage("simplePrompt", response);
+        return ResponseEntity.ok(response.getResult().getOutput().getContent());
     }
     //localhost:8080/simplePrompt
 
@@ -67,8 +80,7 @@ public class CityController {
         OpenAiChatOptions options = new OpenAiChatOptions.Builder().withModel(OpenAiApi.ChatModel.GPT_3_5_TURBO.value).build();
         Prompt prompt = new Prompt(messages, options);
         //client call
-        ChatResponse response = chatModel.call(prompt);
-        return ResponseEntity.ok(response.getResult().getOutput().getContent());
+        return ResponseEntity.ok(modelMetrics.call("messageTypes", () -> responseCache.call(prompt)));
     }//localhost:8080/MessageTypes
 
     public static final String userTemplate = """
@@ -107,8 +119,8 @@ public class CityController {
         //create prompt
         Prompt prompt = new Prompt(Arrays.asList(userMessage, systemMessage));
 
-        //client call
-        return ResponseEntity.ok(chatModel.call(prompt).getResult().getOutput().getContent());
+        //client call, cached for the same city only
+        return ResponseEntity.ok(modelMetrics.call("promptTemplate", () -> responseCache.call(prompt)));
     }
     //localhost:8080/promptTemplate?input=Kuala Lumpur
 
@@ -122,7 +134,7 @@ public class CityController {
         Prompt prompt = template.create();
 
         //client call
-        return parser.parse(chatModel.call(prompt).getResult().getOutput().getContent());
+        return parser.parse(modelMetrics.call("outputConverter", () -> responseCache.call(prompt)));
     }
     //localhost:8080/outputConverter?input=London
 
@@ -138,9 +150,10 @@ public class CityController {
     public ResponseEntity<String> chatMemory(@RequestParam String input) {
         String chatId = "default_id";
 
-        chatClient.prompt().user(input).advisors(advisor ->
-                advisor.param(CHAT_MEMORY_CONVERSATION_ID_KEY, chatId).param(CHAT_MEMORY_RETRIEVE_SIZE_KEY, 100)
-        ).call().content();
+        ChatResponse response = modelMetrics.call("memoryAdvisor", () -> chatClient.prompt().user(input).advisors(
+                advisor -> advisor.param(CHAT_MEMORY_CONVERSATION_ID_KEY, chatId).param(CHAT_MEMORY_RETRIEVE_SIZE_KEY, 100)
+        ).call().chatResponse());
+        modelMetrics.recordUsage("memoryAdvisor", response);
 
         List<Message> messages = chatMemory.get(chatId,1000);
         String appResponse = messages.stream().map( message ->
@@ -188,8 +201,8 @@ public class CityController {
         Prompt prompt = new Prompt(Arrays.asList(userMessage, systemMessage),
                 OpenAiChatOptions.builder().withFunction("getCityWeather").build());
 
-        //client call
-        return ResponseEntity.ok(chatModel.call(prompt).getResult().getOutput().getContent());
+        //client call, not cached as the weather function returns live data
+        return ResponseEntity.ok(modelMetrics.call("functionCall", () -> responseCache.call(prompt)));
     }
     //localhost:8080/functionCall?input=Tokyo
 }
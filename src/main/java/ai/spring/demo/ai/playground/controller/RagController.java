@@ -1,9 +1,10 @@
 package ai.spring.demo.ai.playground.controller;
 
+import ai.spring.demo.ai.playground.metrics.ModelMetrics;
+import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.ai.embedding.EmbeddingRequest;
 import org.springframework.ai.embedding.EmbeddingResponse;
 import org.springframework.ai.openai.OpenAiChatModel;
-import org.springframework.ai.openai.OpenAiEmbeddingModel;
 import org.springframework.ai.openai.OpenAiEmbeddingOptions;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
@@ -14,22 +15,25 @@ import java.util.Map;
 @RestController
 public class RagController {
     private final OpenAiChatModel chatClient;
-    private final OpenAiEmbeddingModel embeddingClient;
+    private final EmbeddingModel embeddingClient;
+    private final ModelMetrics modelMetrics;
 
     public RagController(
             OpenAiChatModel chatClient,
-            OpenAiEmbeddingModel embeddingClient) {
+            EmbeddingModel embeddingClient,
+            ModelMetrics modelMetrics) {
         this.chatClient = chatClient;
         this.embeddingClient = embeddingClient;
+        this.modelMetrics = modelMetrics;
     }
 
     @GetMapping("/embedding")
     public Map getEmbedding() {
-        EmbeddingResponse embeddingResponse = embeddingClient.call(
+        EmbeddingResponse embeddingResponse = modelMetrics.call("embedding", () -> embeddingClient.call(
                 new EmbeddingRequest(List.of("Hello World"),
                         OpenAiEmbeddingOptions.builder()
                                 .withModel("text-embedding-ada-002")
-                                .build()));
+                                .build())));
 
         return Map.of("embedding", embeddingResponse.getResult().getOutput());
     }
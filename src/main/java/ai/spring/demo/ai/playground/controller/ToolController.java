@@ -1,59 +1,65 @@
 package ai.spring.demo.ai.playground.controller;
 
-import org.springframework.ai.audio.transcription.AudioTranscriptionPrompt;
+import ai.spring.demo.ai.playground.media.GeneratedImages;
+import ai.spring.demo.ai.playground.media.MediaCache;
+import ai.spring.demo.ai.playground.media.MediaResponses;
+import ai.spring.demo.ai.playground.media.Speech;
+import ai.spring.demo.ai.playground.media.Transcriptions;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.ai.chat.messages.SystemMessage;
 import org.springframework.ai.chat.messages.UserMessage;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.chat.prompt.PromptTemplate;
 import org.springframework.ai.chat.prompt.SystemPromptTemplate;
-import org.springframework.ai.image.ImagePrompt;
-import org.springframework.ai.image.ImageResponse;
 import org.springframework.ai.openai.*;
 import org.springframework.ai.openai.api.OpenAiAudioApi;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.InputStreamResource;
 import org.springframework.core.io.Resource;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import reactor.core.publisher.Flux;
 
-import java.io.InputStream;
-import java.net.URI;
-import java.net.URL;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Map;
 
 @RestController
 public class ToolController {
 
-    private final OpenAiAudioTranscriptionModel transcriptionClient;
-    public final OpenAiImageModel imageClient;
+    private final Transcriptions transcriptions;
+    private final GeneratedImages images;
+    private final Speech speech;
 
     public ToolController(
-            OpenAiAudioTranscriptionModel transcriptionClient,
-            OpenAiImageModel imageClient) {
-        this.imageClient = imageClient;
-        this.transcriptionClient = transcriptionClient;
+            Transcriptions transcriptions,
+            GeneratedImages images,
+            Speech speech) {
+        this.images = images;
+        this.speech = speech;
+        this.transcriptions = transcriptions;
     }
 
     @GetMapping(value = "/image")
-    public ResponseEntity<InputStreamResource> image(@RequestParam(required = false) String input) throws Exception {
-        //client call (inline prompt)
-        ImageResponse response = imageClient.call(
-                new ImagePrompt(input,
-                        OpenAiImageOptions.builder()
-                                .withQuality("hd")
-                                .withN(1)
-                                .withHeight(1024)
-                                .withWidth(1024).build())
-        );
-        //Parse Response
-        URL url = new URI(response.getResult().getOutput().getUrl()).toURL();
-        InputStream in = url.openStream();
-
-        return ResponseEntity.ok().contentType(MediaType.IMAGE_JPEG).body(new InputStreamResource(in));
+    public ResponseEntity<ResponseBodyEmitter> image(@RequestParam(defaultValue = "A duck") String input,
+            HttpServletRequest request, HttpServletResponse response) throws IOException {
+        OpenAiImageOptions options = OpenAiImageOptions.builder()
+                .withQuality("hd")
+                .withN(1)
+                .withHeight(1024)
+                .withWidth(1024).build();
+        //Repeated prompts are served from the disk cache
+        MediaCache.Entry cached = images.cached(input, options);
+        if (cached != null) {
+            MediaResponses.serve(cached, MediaType.IMAGE_JPEG, request, response);
+            return null;
+        }
+        //client call (inline prompt) off the request thread, then stream the image from the provider to the client
+        return MediaResponses.stream(images.generate(input, options), MediaType.IMAGE_JPEG);
     }
     //localhost:8080/image?input=A duck
     //localhost:8080/image?input=Nasi Lemak
@@ -66,40 +72,53 @@ public class ToolController {
 
     @GetMapping("/transcription")
     public String transcription(@RequestParam String input) {
-        //create prompt
-        Resource audioResource = input.contains("malay") ? selamatPagi : coffeeOrTea;
+        //client call, cached by the audio, language and format
+        return transcriptions.transcribe(audio(input), transcriptionOptions(input));
+    }
 
-        OpenAiAudioTranscriptionOptions options = OpenAiAudioTranscriptionOptions.builder()
-                .withLanguage(input.equals("malay") ? "ms" : "en") // ISO-639-1
-                .withResponseFormat(format).build();
+    @GetMapping(value = "/transcription", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<String> transcriptionEvents(@RequestParam String input) {
+        //Incremental: every segment of a long recording as soon as it is transcribed
+        return transcriptions.transcribeIncrementally(audio(input), transcriptionOptions(input));
+    }
 
-        AudioTranscriptionPrompt prompt = new AudioTranscriptionPrompt(audioResource, options);
+    private Resource audio(String input) {
+        return input.contains("malay") ? selamatPagi : coffeeOrTea;
+    }
 
-        //client call
-        return transcriptionClient.call(prompt).getResult().getOutput();
+    private OpenAiAudioTranscriptionOptions transcriptionOptions(String input) {
+        return OpenAiAudioTranscriptionOptions.builder()
+                .withLanguage(input.equals("malay") ? "ms" : "en") // ISO-639-1
+                .withResponseFormat(format).build();
     }
     //localhost:8080/transcription?input=malay
     //localhost:8080/transcription?input=english
 
-    @Value("${spring.ai.openai.api-key}")
-    private String apiKey;
-
     @GetMapping("/speech")
-    public ResponseEntity<?> speech() throws Exception {
+    public ResponseEntity<ResponseBodyEmitter> speech(
+            @RequestParam(defaultValue = "Hello and welcome to our Spring AI showcase.") String input,
+            @RequestParam(defaultValue = "ALLOY") OpenAiAudioApi.SpeechRequest.Voice voice,
+            @RequestParam(defaultValue = "1.0") float speed,
+            HttpServletRequest request, HttpServletResponse response) throws IOException {
         //Manual: not calling a client
-        //Initialize API
-        OpenAiAudioApi api = new OpenAiAudioApi(apiKey);
         //Create Request
         OpenAiAudioApi.SpeechRequest speechRequest = new OpenAiAudioApi.SpeechRequest(
                 OpenAiAudioApi.TtsModel.TTS_1_HD.value,
-                "Hello and welcome to our Spring AI showcase.",
-                OpenAiAudioApi.SpeechRequest.Voice.ALLOY,
-                OpenAiAudioApi.SpeechRequest.AudioResponseFormat.MP3, 1.0f);
-
-        //API call
-        return api.createSpeech(speechRequest);
+                input,
+                voice,
+                OpenAiAudioApi.SpeechRequest.AudioResponseFormat.MP3, speed);
+
+        //Repeated requests are served from the disk cache
+        MediaCache.Entry cached = speech.cached(speechRequest);
+        if (cached != null) {
+            speech.serve(cached, speechRequest, request, response);
+            return null;
+        }
+        //API call, streamed to the client as the audio is synthesized
+        return MediaResponses.stream(speech.synthesize(speechRequest), Speech.contentType(speechRequest));
     }
     //localhost:8080/speech
+    //localhost:8080/speech?input=Selamat pagi&voice=NOVA
 
     /*@Value("classpath:chinese.m4a")
     private Resource chinese;
@@ -2,25 +2,37 @@ package ai.spring.demo.ai.playground.data;
 
 import java.time.LocalDate;
 
-public class Booking {
-
-    private String bookingNumber;
-    private LocalDate date;
-    private LocalDate bookingTo;
-    private Customer customer;
-    private String from;
-    private String to;
-    private BookingStatus bookingStatus;
-    private BookingClass bookingClass;
+/**
+ * Immutable snapshot of a booking. Changes produce a new snapshot with the next
+ * {@link #getVersion() version}, which {@link BookingData} installs with a compare-and-set.
+ */
+public final class Booking {
+
+    private final String bookingNumber;
+    private final LocalDate date;
+    private final LocalDate bookingTo;
+    private final Customer customer;
+    private final String from;
+    private final String to;
+    private final BookingStatus bookingStatus;
+    private final BookingClass bookingClass;
+    private final long version;
 
     public Booking(String bookingNumber, LocalDate date, Customer customer, BookingStatus bookingStatus, String from, String to, BookingClass bookingClass) {
+        this(bookingNumber, date, null, customer, bookingStatus, from, to, bookingClass, 0);
+    }
+
+    public Booking(String bookingNumber, LocalDate date, LocalDate bookingTo, Customer customer, BookingStatus bookingStatus,
+            String from, String to, BookingClass bookingClass, long version) {
         this.bookingNumber = bookingNumber;
         this.date = date;
+        this.bookingTo = bookingTo;
         this.customer = customer;
         this.bookingStatus = bookingStatus;
         this.from = from;
         this.to = to;
         this.bookingClass = bookingClass;
+        this.version = version;
     }
 
 
@@ -28,63 +40,50 @@ public class Booking {
         return bookingNumber;
     }
 
-    public void setBookingNumber(String bookingNumber) {
-        this.bookingNumber = bookingNumber;
-    }
-
     public LocalDate getDate() {
         return date;
     }
 
-    public void setDate(LocalDate date) {
-        this.date = date;
-    }
-
     public LocalDate getBookingTo() {
         return bookingTo;
     }
 
-    public void setBookingTo(LocalDate bookingTo) {
-        this.bookingTo = bookingTo;
-    }
-
     public Customer getCustomer() {
         return customer;
     }
 
-    public void setCustomer(Customer customer) {
-        this.customer = customer;
-    }
-
     public BookingStatus getBookingStatus() {
         return bookingStatus;
     }
 
-    public void setBookingStatus(BookingStatus bookingStatus) {
-        this.bookingStatus = bookingStatus;
-    }
-
     public String getFrom() {
         return from;
     }
 
-    public void setFrom(String from) {
-        this.from = from;
-    }
-
     public String getTo() {
         return to;
     }
 
-    public void setTo(String to) {
-        this.to = to;
-    }
-
     public BookingClass getBookingClass() {
         return bookingClass;
     }
 
-    public void setBookingClass(BookingClass bookingClass) {
-        this.bookingClass = bookingClass;
+    public long getVersion() {
+        return version;
+    }
+
+    public Booking withRoute(LocalDate date, String from, String to) {
+        return new Booking(bookingNumber, date, bookingTo, customer, bookingStatus, from, to, bookingClass, version + 1);
+    }
+
+    public Booking withBookingStatus(BookingStatus bookingStatus) {
+        return new Booking(bookingNumber, date, bookingTo, customer, bookingStatus, from, to, bookingClass, version + 1);
+    }
+
+    /**
+     * Returns the same content under another version, to take back a change that failed.
+     */
+    Booking withVersion(long version) {
+        return new Booking(bookingNumber, date, bookingTo, customer, bookingStatus, from, to, bookingClass, version);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,125 @@
+package ai.spring.demo.ai.playground.data;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Map;
+
+/**
+ * Compact binary form of a {@link Booking}, shared by the journal and the snapshots of
+ * {@link BookingStore}. Strings are length-prefixed UTF-8, {@code -1} encodes {@code null}.
+ */
+final class BookingCodec {
+
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    private static final BookingStatus[] STATUSES = BookingStatus.values();
+
+    private static final BookingClass[] CLASSES = BookingClass.values();
+
+    private BookingCodec() {
+    }
+
+    static int sizeOf(Booking booking) {
+        return sizeOf(booking.getBookingNumber())
+                + Long.BYTES + Long.BYTES
+                + sizeOf(booking.getCustomer().getFirstName())
+                + sizeOf(booking.getCustomer().getLastName())
+                + sizeOf(booking.getFrom())
+                + sizeOf(booking.getTo())
+                + Byte.BYTES + Byte.BYTES
+                + Long.BYTES;
+    }
+
+    static void encode(Booking booking, ByteBuffer buffer) {
+        putString(buffer, booking.getBookingNumber());
+        putDate(buffer, booking.getDate());
+        putDate(buffer, booking.getBookingTo());
+        putString(buffer, booking.getCustomer().getFirstName());
+        putString(buffer, booking.getCustomer().getLastName());
+        putString(buffer, booking.getFrom());
+        putString(buffer, booking.getTo());
+        buffer.put((byte) booking.getBookingStatus().ordinal());
+        buffer.put((byte) booking.getBookingClass().ordinal());
+        buffer.putLong(booking.getVersion());
+    }
+
+    /**
+     * Decodes a booking, sharing {@link Customer} instances through {@code customers} so that
+     * a large table does not hold one customer object per booking.
+     */
+    static Booking decode(ByteBuffer buffer, Map<String, Customer> customers) {
+        String bookingNumber = getString(buffer);
+        LocalDate date = getDate(buffer);
+        LocalDate bookingTo = getDate(buffer);
+        String firstName = getString(buffer);
+        String lastName = getString(buffer);
+        Customer customer = customers.computeIfAbsent(firstName + '|' + lastName,
+                k -> new Customer(firstName, lastName));
+        String from = getString(buffer);
+        String to = getString(buffer);
+        BookingStatus status = STATUSES[buffer.get()];
+        BookingClass bookingClass = CLASSES[buffer.get()];
+        long version = buffer.getLong();
+        return new Booking(bookingNumber, date, bookingTo, customer, status, from, to, bookingClass, version);
+    }
+
+    static int sizeOf(String value) {
+        return Integer.BYTES + (value == null ? 0 : utf8Length(value));
+    }
+
+    static void putString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void putDate(ByteBuffer buffer, LocalDate date) {
+        buffer.putLong(date == null ? NO_DATE : date.toEpochDay());
+    }
+
+    private static LocalDate getDate(ByteBuffer buffer) {
+        long epochDay = buffer.getLong();
+        return epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    private static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            }
+            else if (c < 0x800) {
+                length += 2;
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            }
+            else if (Character.isSurrogate(c)) {
+                // unpaired surrogates are encoded as '?'
+                length += 1;
+            }
+            else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
@@ -1,27 +1,357 @@
 package ai.spring.demo.ai.playground.data;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
 
+/**
+ * In-memory booking table. Bookings are immutable snapshots: readers get the current
+ * snapshot from a {@link ConcurrentHashMap} without ever blocking, and writers install a
+ * new version with a compare-and-set on the booking's map entry, retrying on conflict.
+ */
 public class BookingData {
 
-    private List<Customer> customers = new ArrayList<>();
-    private List<Booking> bookings = new ArrayList<>();
+    private volatile List<Customer> customers = List.of();
 
+    // Primary index: normalized booking number -> current snapshot and its insertion sequence
+    private final Map<String, Slot> bookingsByNumber;
+
+    // Secondary index: normalized "first|last" customer name -> booking numbers
+    private final Map<String, Set<String>> bookingNumbersByCustomer;
+
+    // Booking numbers by insertion sequence, for listing; removal is O(log n)
+    private final NavigableMap<Long, String> insertionOrder = new ConcurrentSkipListMap<>();
+
+    private final AtomicLong insertionSequence = new AtomicLong();
+
+    private final List<BookingListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * A booking with the position it was inserted at. Equal slots hold the same snapshot
+     * instance, which keeps the compare-and-set on the map entry an identity check.
+     */
+    private record Slot(long sequence, Booking booking) {
+    }
+
+    public BookingData() {
+        this(16);
+    }
+
+    /**
+     * Creates a table sized for {@code expectedBookings}, avoiding rehashing while a large
+     * data set is loaded.
+     */
+    public BookingData(int expectedBookings) {
+        this.bookingsByNumber = new ConcurrentHashMap<>(expectedBookings);
+        this.bookingNumbersByCustomer = new ConcurrentHashMap<>(Math.max(16, expectedBookings / 4));
+    }
 
     public List<Customer> getCustomers() {
         return customers;
     }
 
     public void setCustomers(List<Customer> customers) {
-        this.customers = customers;
+        this.customers = List.copyOf(customers);
     }
 
+    /**
+     * Returns the current snapshot of every booking, in insertion order.
+     */
     public List<Booking> getBookings() {
-        return bookings;
+        var result = new ArrayList<Booking>(bookingsByNumber.size());
+        for (Map.Entry<Long, String> entry : insertionOrder.entrySet()) {
+            Slot slot = bookingsByNumber.get(entry.getValue());
+            if (slot != null && slot.sequence() == entry.getKey()) {
+                result.add(slot.booking());
+            }
+        }
+        return Collections.unmodifiableList(result);
     }
 
     public void setBookings(List<Booking> bookings) {
-        this.bookings = bookings;
+        bookingsByNumber.clear();
+        bookingNumbersByCustomer.clear();
+        insertionOrder.clear();
+        bookings.forEach(this::addBooking);
+    }
+
+    /**
+     * Adds a booking. When a listener fails, the booking is removed again as described for
+     * {@link #update}.
+     */
+    public void addBooking(Booking booking) {
+        insert(booking);
+        try {
+            notify(listener -> listener.bookingChanged(booking));
+        }
+        catch (RuntimeException e) {
+            if (deleteIfCurrent(booking)) {
+                compensate(e, listener -> listener.bookingRemoved(booking));
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Removes a booking. When a listener fails, the booking is put back as described for
+     * {@link #update}, unless its number was reused in the meantime.
+     */
+    public void removeBooking(Booking booking) {
+        Booking removed = delete(booking.getBookingNumber());
+        if (removed == null) {
+            return;
+        }
+        try {
+            notify(listener -> listener.bookingRemoved(removed));
+        }
+        catch (RuntimeException e) {
+            if (tryInsert(removed)) {
+                compensate(e, listener -> listener.bookingChanged(removed));
+            }
+            throw e;
+        }
+    }
+
+    public void addListener(BookingListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(BookingListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Looks up the current snapshot of a booking by its booking number, ignoring case and
+     * surrounding whitespace.
+     * @return the booking or {@code null} if there is none
+     */
+    public Booking findBooking(String bookingNumber) {
+        if (bookingNumber == null) {
+            return null;
+        }
+        Slot slot = bookingsByNumber.get(normalize(bookingNumber));
+        return slot != null ? slot.booking() : null;
+    }
+
+    /**
+     * Returns the current snapshots of all bookings of the customer with the given name,
+     * ignoring case.
+     */
+    public List<Booking> findBookingsByCustomer(String firstName, String lastName) {
+        if (firstName == null || lastName == null) {
+            return List.of();
+        }
+        Set<String> numbers = bookingNumbersByCustomer.get(customerKey(firstName, lastName));
+        if (numbers == null) {
+            return List.of();
+        }
+        var result = new ArrayList<Booking>(numbers.size());
+        for (String number : numbers) {
+            Slot slot = bookingsByNumber.get(number);
+            if (slot != null) {
+                result.add(slot.booking());
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Replaces {@code expected} with {@code updated} if {@code expected} is still the current
+     * snapshot. {@code updated} must be the next version of the same booking.
+     * @return {@code true} if the update was installed, {@code false} if another writer won
+     */
+    public boolean compareAndSet(Booking expected, Booking updated) {
+        if (!normalize(expected.getBookingNumber()).equals(normalize(updated.getBookingNumber()))
+                || updated.getVersion() != expected.getVersion() + 1) {
+            throw new IllegalArgumentException("Booking " + updated.getBookingNumber() + " version "
+                    + updated.getVersion() + " does not follow version " + expected.getVersion());
+        }
+        String number = normalize(expected.getBookingNumber());
+        Slot current = bookingsByNumber.get(number);
+        return current != null && current.booking() == expected
+                && bookingsByNumber.replace(number, current, new Slot(current.sequence(), updated));
+    }
+
+    /**
+     * Applies {@code mutation} to the current snapshot of {@code booking} and installs the
+     * result, retrying against the latest snapshot when a concurrent update wins. Validation
+     * done inside the mutation is therefore atomic with the update. The mutation may run more
+     * than once and must be free of side effects; it can throw to reject the update.
+     * <p>
+     * Listeners, among them the journal of a {@link BookingStore}, run after the snapshot is
+     * installed. If one of them throws, the change is taken back before the failure is
+     * rethrown, so that a change reported as failed is neither visible nor durable: the
+     * previous content is installed again as the next version, which listeners are told
+     * about like any change, so the journal records it after the failed record in case that
+     * one reached the disk anyway. A change that another writer already built on is not
+     * taken back, as the later version carries it and is journaled on its own.
+     * @return the installed snapshot
+     */
+    public Booking update(Booking booking, UnaryOperator<Booking> mutation) {
+        String number = normalize(booking.getBookingNumber());
+        while (true) {
+            Slot slot = bookingsByNumber.get(number);
+            if (slot == null) {
+                throw new IllegalArgumentException("Booking not found");
+            }
+            Booking current = slot.booking();
+            Booking updated = mutation.apply(current);
+            if (updated == current) {
+                return current;
+            }
+            if (compareAndSet(current, updated)) {
+                try {
+                    notify(listener -> listener.bookingChanged(updated));
+                }
+                catch (RuntimeException e) {
+                    Booking reverted = current.withVersion(updated.getVersion() + 1);
+                    if (compareAndSet(updated, reverted)) {
+                        compensate(e, listener -> listener.bookingChanged(reverted));
+                    }
+                    throw e;
+                }
+                return updated;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Installs a recovered snapshot without notifying listeners. An existing booking is only
+     * replaced by a newer version, so snapshots can be restored in any order.
+     */
+    void restore(Booking booking) {
+        String number = normalize(booking.getBookingNumber());
+        Slot existing = bookingsByNumber.get(number);
+        if (existing == null) {
+            insert(booking);
+        }
+        else if (booking.getVersion() > existing.booking().getVersion()) {
+            bookingsByNumber.put(number, new Slot(existing.sequence(), booking));
+        }
+    }
+
+    /**
+     * Removes a booking without notifying listeners.
+     */
+    void restoreRemoval(String bookingNumber) {
+        delete(bookingNumber);
+    }
+
+    public int size() {
+        return bookingsByNumber.size();
+    }
+
+    /**
+     * Calls every listener, even when an earlier one throws, so that a failing journal does
+     * not keep caches from being invalidated. The first failure is rethrown afterwards, with
+     * the others suppressed.
+     */
+    private void notify(Consumer<BookingListener> event) {
+        RuntimeException failure = null;
+        for (BookingListener listener : listeners) {
+            try {
+                event.accept(listener);
+            }
+            catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+                else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Tells the listeners that a failed change was taken back. Their failures are added to
+     * the original one, which the caller rethrows.
+     */
+    private void compensate(RuntimeException failure, Consumer<BookingListener> event) {
+        try {
+            notify(event);
+        }
+        catch (RuntimeException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    private void insert(Booking booking) {
+        if (!tryInsert(booking)) {
+            throw new IllegalArgumentException("Duplicate booking number: " + booking.getBookingNumber());
+        }
+    }
+
+    private boolean tryInsert(Booking booking) {
+        String number = normalize(booking.getBookingNumber());
+        long sequence = insertionSequence.incrementAndGet();
+        if (bookingsByNumber.putIfAbsent(number, new Slot(sequence, booking)) != null) {
+            return false;
+        }
+        insertionOrder.put(sequence, number);
+        bookingNumbersByCustomer
+                .computeIfAbsent(customerKey(booking.getCustomer()), k -> ConcurrentHashMap.newKeySet())
+                .add(number);
+        return true;
+    }
+
+    private Booking delete(String bookingNumber) {
+        String number = normalize(bookingNumber);
+        Slot removed = bookingsByNumber.remove(number);
+        if (removed == null) {
+            return null;
+        }
+        unindex(number, removed);
+        return removed.booking();
+    }
+
+    /**
+     * Removes {@code expected} if it is still the current snapshot of its booking.
+     */
+    private boolean deleteIfCurrent(Booking expected) {
+        String number = normalize(expected.getBookingNumber());
+        Slot slot = bookingsByNumber.get(number);
+        if (slot == null || slot.booking() != expected || !bookingsByNumber.remove(number, slot)) {
+            return false;
+        }
+        unindex(number, slot);
+        return true;
+    }
+
+    private void unindex(String number, Slot removed) {
+        insertionOrder.remove(removed.sequence());
+        Set<String> numbers = bookingNumbersByCustomer.get(customerKey(removed.booking().getCustomer()));
+        if (numbers != null) {
+            numbers.remove(number);
+        }
+    }
+
+    private static String customerKey(Customer customer) {
+        return customerKey(customer.getFirstName(), customer.getLastName());
+    }
+
+    private static String customerKey(String firstName, String lastName) {
+        return normalize(firstName) + '|' + normalize(lastName);
+    }
+
+    /**
+     * Returns the canonical form of a booking number or name, as used by the indexes.
+     */
+    public static String normalize(String value) {
+        return value.strip().toUpperCase(Locale.ROOT);
     }
 }
@@ -0,0 +1,333 @@
+package ai.spring.demo.ai.playground.data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only journal of booking changes, split into segments named after the sequence
+ * number of their first record.
+ * <p>
+ * Appends are handed to a single writer thread which drains everything that queued up
+ * while the previous {@code fsync} was running, writes it in one go and forces it once
+ * (group commit). Callers block until their record is durable.
+ * <p>
+ * Record layout: {@code [int payloadLength][long sequence][byte type][payload][int crc32c]},
+ * the checksum covering sequence, type and payload. Replay stops at the first torn or
+ * corrupt record.
+ */
+final class BookingJournal implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(BookingJournal.class);
+
+    private static final byte CHANGED = 1;
+
+    private static final byte REMOVED = 2;
+
+    private static final int HEADER_SIZE = Integer.BYTES + Long.BYTES + Byte.BYTES;
+
+    private static final int MAX_BATCH = 4096;
+
+    private final Path directory;
+
+    private final BlockingQueue<Operation> queue = new LinkedBlockingQueue<>();
+
+    // Owned by the writer thread
+    private FileChannel segment;
+    private long segmentStart;
+    private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+    private volatile long lastSequence;
+
+    private volatile boolean closed;
+
+    private sealed interface Operation {
+    }
+
+    private record Append(byte type, Booking booking, CompletableFuture<Void> done) implements Operation {
+    }
+
+    private record Roll(CompletableFuture<Long> done) implements Operation {
+    }
+
+    private record Close(CompletableFuture<Void> done) implements Operation {
+    }
+
+    /**
+     * Opens a new segment following {@code lastSequence}, the last valid record found by
+     * {@link #replay}. Earlier segments are never appended to, so a torn tail of a previous
+     * run stays at the end of its segment.
+     */
+    BookingJournal(Path directory, long lastSequence) {
+        this.directory = directory;
+        this.lastSequence = lastSequence;
+        openSegment(lastSequence + 1);
+        Thread.ofPlatform().name("booking-journal").daemon().start(this::run);
+    }
+
+    long lastSequence() {
+        return lastSequence;
+    }
+
+    void append(Booking booking) {
+        var append = new Append(CHANGED, booking, new CompletableFuture<>());
+        enqueue(append);
+        await(append.done());
+    }
+
+    void appendRemoval(Booking booking) {
+        var append = new Append(REMOVED, booking, new CompletableFuture<>());
+        enqueue(append);
+        await(append.done());
+    }
+
+    /**
+     * Starts a new segment once all records queued so far are durable.
+     * @return the sequence number of the last record before the new segment
+     */
+    long roll() {
+        var roll = new Roll(new CompletableFuture<>());
+        enqueue(roll);
+        return await(roll.done());
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            var close = new Close(new CompletableFuture<>());
+            queue.add(close);
+            await(close.done());
+        }
+    }
+
+    private void enqueue(Operation operation) {
+        if (closed) {
+            throw new IllegalStateException("Booking journal is closed");
+        }
+        queue.add(operation);
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        }
+        catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private void run() {
+        var batch = new ArrayList<Operation>();
+        var pending = new ArrayList<CompletableFuture<Void>>();
+        while (true) {
+            try {
+                batch.add(queue.take());
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            queue.drainTo(batch, MAX_BATCH - 1);
+            for (Operation operation : batch) {
+                try {
+                    switch (operation) {
+                        case Append append -> {
+                            write(append);
+                            pending.add(append.done());
+                        }
+                        case Roll roll -> {
+                            commit(pending);
+                            if (segmentStart <= lastSequence) {
+                                segment.close();
+                                openSegment(lastSequence + 1);
+                            }
+                            roll.done().complete(segmentStart - 1);
+                        }
+                        case Close close -> {
+                            commit(pending);
+                            segment.close();
+                            close.done().complete(null);
+                            return;
+                        }
+                    }
+                }
+                catch (IOException | RuntimeException e) {
+                    // Anything else would end the writer and leave every later append waiting
+                    RuntimeException failure = fail(pending, e);
+                    switch (operation) {
+                        case Append append -> append.done().completeExceptionally(failure);
+                        case Roll roll -> roll.done().completeExceptionally(failure);
+                        case Close close -> close.done().completeExceptionally(failure);
+                    }
+                }
+            }
+            try {
+                commit(pending);
+            }
+            catch (IOException | RuntimeException e) {
+                fail(pending, e);
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Fails the uncommitted appends and continues in a fresh segment, so that a partially
+     * written batch can only ever be the torn tail of a segment. The records buffered for
+     * the batch are dropped, as one of them may be half encoded.
+     */
+    private RuntimeException fail(List<CompletableFuture<Void>> pending, Exception e) {
+        RuntimeException failure = e instanceof RuntimeException runtime ? runtime
+                : new UncheckedIOException((IOException) e);
+        logger.error("Booking journal write failed", failure);
+        pending.forEach(done -> done.completeExceptionally(failure));
+        pending.clear();
+        buffer.clear();
+        try {
+            segment.close();
+            openSegment(lastSequence + 1);
+        }
+        catch (IOException | UncheckedIOException reopenFailure) {
+            logger.error("Could not start a new booking journal segment", reopenFailure);
+        }
+        return failure;
+    }
+
+    private void write(Append append) {
+        int payloadLength = append.type() == CHANGED
+                ? BookingCodec.sizeOf(append.booking())
+                : BookingCodec.sizeOf(append.booking().getBookingNumber());
+        int recordLength = HEADER_SIZE + payloadLength + Integer.BYTES;
+        if (buffer.remaining() < recordLength) {
+            var larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + recordLength));
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+        int start = buffer.position();
+        buffer.putInt(payloadLength);
+        buffer.putLong(lastSequence + 1);
+        buffer.put(append.type());
+        if (append.type() == CHANGED) {
+            BookingCodec.encode(append.booking(), buffer);
+        }
+        else {
+            BookingCodec.putString(buffer, append.booking().getBookingNumber());
+        }
+        var crc = new CRC32C();
+        crc.update(buffer.array(), start + Integer.BYTES, Long.BYTES + Byte.BYTES + payloadLength);
+        buffer.putInt((int) crc.getValue());
+        lastSequence++;
+    }
+
+    private void commit(List<CompletableFuture<Void>> pending) throws IOException {
+        if (buffer.position() > 0) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                segment.write(buffer);
+            }
+            buffer.clear();
+            segment.force(false);
+        }
+        pending.forEach(done -> done.complete(null));
+        pending.clear();
+    }
+
+    private void openSegment(long start) {
+        try {
+            // A leftover segment at this position can only hold an empty or torn tail
+            this.segment = FileChannel.open(segmentPath(directory, start), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            this.segmentStart = start;
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static Path segmentPath(Path directory, long start) {
+        return directory.resolve("journal-%020d.log".formatted(start));
+    }
+
+    /**
+     * Returns the segment files of the journal, ordered by their first sequence number.
+     */
+    static List<Path> segments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().matches("journal-\\d{20}\\.log"))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    static long segmentStart(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring("journal-".length(), name.length() - ".log".length()));
+    }
+
+    /**
+     * Replays every record with a sequence number above {@code afterSequence} into {@code db}.
+     * @return the sequence number of the last valid record, or {@code afterSequence} if none
+     */
+    static long replay(Path directory, long afterSequence, BookingData db) throws IOException {
+        long last = afterSequence;
+        Map<String, Customer> customers = new HashMap<>();
+        for (Path path : segments(directory)) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                MappedByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                while (records.remaining() >= HEADER_SIZE) {
+                    int start = records.position();
+                    int payloadLength = records.getInt();
+                    if (payloadLength < 0 || records.remaining() < Long.BYTES + Byte.BYTES + payloadLength + Integer.BYTES) {
+                        logger.warn("Ignoring torn record at offset {} of {}", start, path);
+                        break;
+                    }
+                    var crc = new CRC32C();
+                    crc.update(records.slice(start + Integer.BYTES, Long.BYTES + Byte.BYTES + payloadLength));
+                    long sequence = records.getLong();
+                    byte type = records.get();
+                    ByteBuffer payload = records.slice(records.position(), payloadLength);
+                    records.position(records.position() + payloadLength);
+                    if ((int) crc.getValue() != records.getInt()) {
+                        logger.warn("Ignoring corrupt record at offset {} of {}", start, path);
+                        break;
+                    }
+                    if (sequence <= afterSequence) {
+                        continue;
+                    }
+                    if (type == CHANGED) {
+                        db.restore(BookingCodec.decode(payload, customers));
+                    }
+                    else {
+                        db.restoreRemoval(BookingCodec.getString(payload));
+                    }
+                    last = Math.max(last, sequence);
+                }
+            }
+        }
+        return last;
+    }
+}
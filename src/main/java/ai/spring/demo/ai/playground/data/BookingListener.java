@@ -0,0 +1,20 @@
+package ai.spring.demo.ai.playground.data;
+
+/**
+ * Receives the snapshots installed in {@link BookingData}. Callbacks run on the writing
+ * thread after the change is visible to readers, in registration order. Every listener is
+ * called even when an earlier one throws.
+ */
+public interface BookingListener {
+
+    /**
+     * Called when a booking is added or a new version of it is installed.
+     */
+    void bookingChanged(Booking booking);
+
+    /**
+     * Called when a booking is removed.
+     */
+    default void bookingRemoved(Booking booking) {
+    }
+}
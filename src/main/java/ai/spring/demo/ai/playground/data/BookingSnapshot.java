@@ -0,0 +1,118 @@
+package ai.spring.demo.ai.playground.data;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Compact snapshot of the booking table, written and read through memory-mapped files.
+ * <p>
+ * Layout: {@code [int magic][int format][long sequence][int count]} followed by
+ * {@code count} records of {@code [int length][booking]}. {@code sequence} is the last
+ * journal record whose effect is guaranteed to be contained in the snapshot.
+ */
+final class BookingSnapshot {
+
+    private static final int MAGIC = 0x424B534E; // "BKSN"
+
+    private static final int FORMAT = 1;
+
+    private static final int HEADER_SIZE = Integer.BYTES + Integer.BYTES + Long.BYTES + Integer.BYTES;
+
+    // Files are mapped in windows so that snapshots can grow beyond 2 GB
+    private static final long WINDOW_SIZE = 256L * 1024 * 1024;
+
+    private BookingSnapshot() {
+    }
+
+    static Path path(Path directory, long sequence) {
+        return directory.resolve("snapshot-%020d.dat".formatted(sequence));
+    }
+
+    static long sequence(Path snapshot) {
+        String name = snapshot.getFileName().toString();
+        return Long.parseLong(name.substring("snapshot-".length(), name.length() - ".dat".length()));
+    }
+
+    /**
+     * Returns the snapshot files in the directory, oldest first.
+     */
+    static List<Path> snapshots(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().matches("snapshot-\\d{20}\\.dat"))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    /**
+     * Writes the bookings to a temporary file and atomically moves it into place once it is
+     * forced to disk.
+     */
+    static Path write(Path directory, long sequence, List<Booking> bookings) throws IOException {
+        long size = HEADER_SIZE;
+        for (Booking booking : bookings) {
+            size += Integer.BYTES + BookingCodec.sizeOf(booking);
+        }
+        Path target = path(directory, sequence);
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long windowStart = 0;
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.min(size, WINDOW_SIZE));
+            window.putInt(MAGIC).putInt(FORMAT).putLong(sequence).putInt(bookings.size());
+            for (Booking booking : bookings) {
+                int length = BookingCodec.sizeOf(booking);
+                if (window.remaining() < Integer.BYTES + length) {
+                    window.force();
+                    windowStart += window.position();
+                    window = channel.map(FileChannel.MapMode.READ_WRITE, windowStart,
+                            Math.min(size - windowStart, Math.max(WINDOW_SIZE, Integer.BYTES + length)));
+                }
+                window.putInt(length);
+                BookingCodec.encode(booking, window);
+            }
+            window.force();
+        }
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return target;
+    }
+
+    /**
+     * Loads a snapshot into {@code db}.
+     * @return the journal sequence covered by the snapshot
+     */
+    static long read(Path snapshot, BookingData db) throws IOException {
+        Map<String, Customer> customers = new HashMap<>();
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long windowStart = 0;
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, WINDOW_SIZE));
+            if (size < HEADER_SIZE || window.getInt() != MAGIC || window.getInt() != FORMAT) {
+                throw new IOException("Not a booking snapshot: " + snapshot);
+            }
+            long sequence = window.getLong();
+            int count = window.getInt();
+            for (int i = 0; i < count; i++) {
+                if (window.remaining() < Integer.BYTES
+                        || window.remaining() < Integer.BYTES + window.getInt(window.position())) {
+                    windowStart += window.position();
+                    window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart,
+                            Math.min(size - windowStart, WINDOW_SIZE));
+                }
+                int length = window.getInt();
+                db.restore(BookingCodec.decode(window.slice(window.position(), length), customers));
+                window.position(window.position() + length);
+            }
+            return sequence;
+        }
+    }
+}
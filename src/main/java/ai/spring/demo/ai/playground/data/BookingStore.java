@@ -0,0 +1,183 @@
+package ai.spring.demo.ai.playground.data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local persistent engine behind {@link BookingData}.
+ * <p>
+ * Every change installed in the attached {@link BookingData} is appended to a
+ * {@link BookingJournal} before the mutating call returns; when the append fails, the call
+ * fails and the change is taken back, see {@link BookingData#update}. A {@link BookingSnapshot} of the
+ * whole table is written periodically. The previous snapshot and the journal segments after
+ * it are kept, older ones are deleted. On startup {@link #recover(BookingData)} loads the
+ * latest snapshot and replays only the journal tail written after it, so restart time
+ * depends on the amount of recent changes rather than on the total number of bookings. A
+ * snapshot that cannot be read is skipped for the previous one and a longer journal tail.
+ */
+public class BookingStore implements BookingListener, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(BookingStore.class);
+
+    private final Path directory;
+
+    private final Duration snapshotInterval;
+
+    private BookingData db;
+
+    private BookingJournal journal;
+
+    private ScheduledExecutorService scheduler;
+
+    private long recoveredSequence;
+
+    private long snapshotSequence = -1;
+
+    public BookingStore(Path directory, Duration snapshotInterval) {
+        this.directory = directory;
+        this.snapshotInterval = snapshotInterval;
+        try {
+            Files.createDirectories(directory);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Loads the latest snapshot and the journal tail into {@code db}.
+     * @return {@code true} if any bookings were recovered
+     */
+    public synchronized boolean recover(BookingData db) {
+        long start = System.nanoTime();
+        try {
+            List<Path> snapshots = BookingSnapshot.snapshots(directory);
+            long sequence = 0;
+            for (int i = snapshots.size() - 1; i >= 0; i--) {
+                try {
+                    sequence = BookingSnapshot.read(snapshots.get(i), db);
+                    snapshotSequence = sequence;
+                    break;
+                }
+                catch (IOException | RuntimeException e) {
+                    logger.warn("Ignoring damaged booking snapshot {}", snapshots.get(i), e);
+                    db.setBookings(List.of());
+                }
+            }
+            List<Path> segments = BookingJournal.segments(directory);
+            if (!segments.isEmpty() && BookingJournal.segmentStart(segments.get(0)) > sequence + 1) {
+                throw new IllegalStateException("No readable booking snapshot covers the journal before "
+                        + segments.get(0));
+            }
+            int fromSnapshot = db.size();
+            recoveredSequence = BookingJournal.replay(directory, sequence, db);
+            logger.info("Recovered {} bookings ({} from snapshot, {} journal records) in {} ms",
+                    db.size(), fromSnapshot, recoveredSequence - sequence,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return db.size() > 0;
+    }
+
+    /**
+     * Starts journaling the changes of {@code db} and taking periodic snapshots. Call after
+     * {@link #recover(BookingData)} and after any initial data has been loaded; whatever is
+     * not yet covered by a snapshot is snapshotted right away.
+     */
+    public synchronized void attach(BookingData db) {
+        if (this.db != null) {
+            throw new IllegalStateException("Booking store is already attached");
+        }
+        this.db = db;
+        this.journal = new BookingJournal(directory, recoveredSequence);
+        if (snapshotSequence < 0 || recoveredSequence > snapshotSequence) {
+            snapshot();
+        }
+        db.addListener(this);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("booking-snapshot").daemon().factory());
+        long interval = snapshotInterval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::snapshotIfChanged, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void bookingChanged(Booking booking) {
+        journal.append(booking);
+    }
+
+    @Override
+    public void bookingRemoved(Booking booking) {
+        journal.appendRemoval(booking);
+    }
+
+    /**
+     * Writes a snapshot of the current table and deletes the snapshots and journal segments
+     * superseded by the previous snapshot, which is kept to recover from should this one be
+     * damaged.
+     */
+    public synchronized void snapshot() {
+        long start = System.nanoTime();
+        // Every change up to 'covered' was installed before it was journaled, so it is
+        // visible to the read of the table below
+        long covered = journal.roll();
+        List<Booking> bookings = db.getBookings();
+        // Every snapshot rolls the journal, so the segments starting up to the previous one
+        // hold nothing it does not cover. Without new changes there is nothing to supersede.
+        long previous = covered > snapshotSequence ? snapshotSequence : -1;
+        try {
+            BookingSnapshot.write(directory, covered, bookings);
+            for (Path snapshot : BookingSnapshot.snapshots(directory)) {
+                if (BookingSnapshot.sequence(snapshot) < previous) {
+                    Files.delete(snapshot);
+                }
+            }
+            for (Path segment : BookingJournal.segments(directory)) {
+                if (BookingJournal.segmentStart(segment) <= previous) {
+                    Files.delete(segment);
+                }
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        snapshotSequence = covered;
+        logger.info("Wrote snapshot of {} bookings at journal sequence {} in {} ms", bookings.size(), covered,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private void snapshotIfChanged() {
+        try {
+            if (journal.lastSequence() > snapshotSequence) {
+                snapshot();
+            }
+        }
+        catch (RuntimeException e) {
+            logger.error("Booking snapshot failed", e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (db == null) {
+            return;
+        }
+        scheduler.shutdownNow();
+        db.removeListener(this);
+        snapshotIfChanged();
+        journal.close();
+        db = null;
+    }
+}
@@ -1,17 +1,14 @@
 package ai.spring.demo.ai.playground.data;
 
-import java.util.ArrayList;
-import java.util.List;
+/**
+ * Immutable customer. The bookings of a customer are looked up through
+ * {@link BookingData#findBookingsByCustomer(String, String)} so they always reflect the
+ * latest booking snapshots.
+ */
+public final class Customer {
 
-public class Customer {
-
-    private String firstName;
-    private String lastName;
-
-    private List<Booking> bookings = new ArrayList<>();
-
-    public Customer() {
-    }
+    private final String firstName;
+    private final String lastName;
 
     public Customer(String firstName, String lastName) {
         this.firstName = firstName;
@@ -22,23 +19,7 @@ public class Customer {
         return firstName;
     }
 
-    public void setFirstName(String firstName) {
-        this.firstName = firstName;
-    }
-
     public String getLastName() {
         return lastName;
     }
-
-    public void setLastName(String lastName) {
-        this.lastName = lastName;
-    }
-
-    public List<Booking> getBookings() {
-        return bookings;
-    }
-
-    public void setBookings(List<Booking> bookings) {
-        this.bookings = bookings;
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,196 @@
+package ai.spring.demo.ai.playground.embedding;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptions;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+
+/**
+ * {@link EmbeddingModel} decorator coalescing the texts of concurrent calls into shared
+ * provider requests.
+ * <p>
+ * Texts are queued and a dispatcher thread groups them until the batch holds
+ * {@code maxBatchSize} texts or {@code maxBatchTokens} tokens, or {@code window} has passed
+ * since its first text arrived. Each batch is sent as one {@link EmbeddingRequest} on a
+ * virtual thread and its results are handed back to the waiting callers. Large calls, like
+ * document ingestion, are split along the same limits.
+ * <p>
+ * Only calls with default options are batched, calls with explicit options go straight
+ * to the delegate. Batch sizes, tokens and the time texts waited for their batch are
+ * published as {@code playground.embedding.batch.*} metrics.
+ */
+public class BatchingEmbeddingModel implements EmbeddingModel, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchingEmbeddingModel.class);
+
+    private final EmbeddingModel delegate;
+
+    private final long windowNanos;
+
+    private final int maxBatchSize;
+
+    private final int maxBatchTokens;
+
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+
+    private final ExecutorService requests = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final Thread dispatcher;
+
+    private final DistributionSummary batchSize;
+
+    private final DistributionSummary batchTokens;
+
+    private final Timer batchWait;
+
+    private final Timer batchRequest;
+
+    private record Pending(String text, int tokens, long queuedAt, CompletableFuture<List<Double>> result) {
+    }
+
+    public BatchingEmbeddingModel(EmbeddingModel delegate, Duration window, int maxBatchSize, int maxBatchTokens,
+            MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.windowNanos = window.toNanos();
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchTokens = maxBatchTokens;
+        this.batchSize = DistributionSummary.builder("playground.embedding.batch.size")
+                .description("Texts per embedding request")
+                .register(meterRegistry);
+        this.batchTokens = DistributionSummary.builder("playground.embedding.batch.tokens")
+                .description("Estimated tokens per embedding request")
+                .register(meterRegistry);
+        this.batchWait = Timer.builder("playground.embedding.batch.wait")
+                .description("Time a text waited for its batch to be sent")
+                .register(meterRegistry);
+        this.batchRequest = Timer.builder("playground.embedding.batch.request")
+                .description("Duration of batched embedding requests")
+                .register(meterRegistry);
+        this.dispatcher = Thread.ofPlatform().name("embedding-batcher").daemon().start(this::run);
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        if (request.getOptions() != null && request.getOptions() != EmbeddingOptions.EMPTY) {
+            return delegate.call(request);
+        }
+        long now = System.nanoTime();
+        List<Pending> pending = new ArrayList<>(request.getInstructions().size());
+        for (String text : request.getInstructions()) {
+            pending.add(new Pending(text, tokenCountEstimator.estimate(text), now, new CompletableFuture<>()));
+        }
+        queue.addAll(pending);
+        List<Embedding> embeddings = new ArrayList<>(pending.size());
+        for (int i = 0; i < pending.size(); i++) {
+            try {
+                embeddings.add(new Embedding(pending.get(i).result().join(), i));
+            }
+            catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+        return new EmbeddingResponse(embeddings);
+    }
+
+    @Override
+    public List<Double> embed(Document document) {
+        return embed(document.getContent());
+    }
+
+    private void run() {
+        Pending carried = null;
+        while (true) {
+            List<Pending> batch = new ArrayList<>();
+            try {
+                Pending first = carried != null ? carried : queue.take();
+                carried = null;
+                batch.add(first);
+                int tokens = first.tokens();
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxBatchSize) {
+                    Pending next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    if (tokens + next.tokens() > maxBatchTokens) {
+                        carried = next;
+                        break;
+                    }
+                    batch.add(next);
+                    tokens += next.tokens();
+                }
+                int batchTokenCount = tokens;
+                requests.execute(() -> send(batch, batchTokenCount));
+            }
+            catch (InterruptedException e) {
+                batch.forEach(pending -> pending.result().cancel(false));
+                if (carried != null) {
+                    carried.result().cancel(false);
+                }
+                return;
+            }
+        }
+    }
+
+    private void send(List<Pending> batch, int tokens) {
+        long now = System.nanoTime();
+        for (Pending pending : batch) {
+            batchWait.record(now - pending.queuedAt(), TimeUnit.NANOSECONDS);
+        }
+        batchSize.record(batch.size());
+        batchTokens.record(tokens);
+        try {
+            List<String> texts = batch.stream().map(Pending::text).toList();
+            EmbeddingResponse response = batchRequest
+                    .record(() -> delegate.call(new EmbeddingRequest(texts, EmbeddingOptions.EMPTY)));
+            for (Embedding embedding : response.getResults()) {
+                batch.get(embedding.getIndex()).result().complete(embedding.getOutput());
+            }
+            for (Pending pending : batch) {
+                if (!pending.result().isDone()) {
+                    pending.result().completeExceptionally(new IllegalStateException("No embedding returned"));
+                }
+            }
+        }
+        catch (RuntimeException e) {
+            logger.warn("Embedding request for {} texts failed", batch.size(), e);
+            batch.forEach(pending -> pending.result().completeExceptionally(e));
+        }
+    }
+
+    @Override
+    public void close() {
+        dispatcher.interrupt();
+        requests.close();
+        Pending pending;
+        while ((pending = queue.poll()) != null) {
+            pending.result().cancel(false);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package ai.spring.demo.ai.playground.embedding;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingOptions;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.openai.OpenAiEmbeddingOptions;
+import org.springframework.lang.Nullable;
+
+/**
+ * {@link EmbeddingModel} decorator caching embeddings by model and normalized text.
+ * <p>
+ * Entries live in a size-bounded Caffeine (W-TinyLFU) cache and optionally in a
+ * {@link DiskEmbeddingCache} that survives restarts. Texts missing from both are sent to
+ * the delegate in one request per call; the pending result is itself the cache entry, so
+ * concurrent callers asking for the same text wait for that single request instead of
+ * sending their own. Cache statistics are published as the {@code embeddings} cache
+ * metrics, disk lookups as {@code playground.embedding.cache.disk}.
+ */
+public class CachingEmbeddingModel implements EmbeddingModel, AutoCloseable {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final EmbeddingModel delegate;
+
+    private final String defaultModel;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final AsyncCache<Key, float[]> cache;
+
+    @Nullable
+    private final DiskEmbeddingCache disk;
+
+    private final Counter diskHits;
+
+    private final Counter diskMisses;
+
+    private record Key(String model, String text) {
+    }
+
+    public CachingEmbeddingModel(EmbeddingModel delegate, String defaultModel, long maximumSize,
+            @Nullable Path diskDirectory, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.defaultModel = defaultModel;
+        this.cache = CaffeineCacheMetrics.monitor(meterRegistry,
+                Caffeine.newBuilder().maximumSize(maximumSize).executor(executor).recordStats().buildAsync(),
+                "embeddings");
+        this.disk = diskDirectory != null ? new DiskEmbeddingCache(diskDirectory) : null;
+        this.diskHits = Counter.builder("playground.embedding.cache.disk").tag("result", "hit").register(meterRegistry);
+        this.diskMisses = Counter.builder("playground.embedding.cache.disk").tag("result", "miss").register(meterRegistry);
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        String model = model(request.getOptions());
+        List<Key> keys = new ArrayList<>(request.getInstructions().size());
+        for (String text : request.getInstructions()) {
+            keys.add(new Key(model, normalize(text)));
+        }
+        Map<Key, float[]> embeddings;
+        try {
+            embeddings = cache.getAll(keys, (missing, executor) -> load(missing, request.getOptions(), executor))
+                    .join();
+        }
+        catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+        List<Embedding> results = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            float[] embedding = embeddings.get(keys.get(i));
+            if (embedding == null) {
+                throw new IllegalStateException("No embedding was loaded for text " + i + " of the request");
+            }
+            results.add(new Embedding(new FloatList(embedding), i));
+        }
+        return new EmbeddingResponse(results);
+    }
+
+    @Override
+    public List<Double> embed(Document document) {
+        return embed(document.getContent());
+    }
+
+    private CompletableFuture<Map<Key, float[]>> load(Set<? extends Key> keys, EmbeddingOptions options,
+            Executor executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            Map<Key, float[]> loaded = new HashMap<>(keys.size() * 2);
+            List<Key> remote = new ArrayList<>(keys.size());
+            for (Key key : keys) {
+                float[] embedding = disk != null ? disk.read(key.model(), key.text()) : null;
+                if (embedding != null) {
+                    loaded.put(key, embedding);
+                    diskHits.increment();
+                }
+                else {
+                    remote.add(key);
+                }
+            }
+            if (disk != null) {
+                diskMisses.increment(remote.size());
+            }
+            if (!remote.isEmpty()) {
+                List<String> texts = remote.stream().map(Key::text).toList();
+                EmbeddingResponse response = delegate.call(new EmbeddingRequest(texts, options));
+                if (response.getResults().size() != remote.size()) {
+                    throw new IllegalStateException("The embedding model returned " + response.getResults().size()
+                            + " embeddings for " + remote.size() + " texts");
+                }
+                for (Embedding result : response.getResults()) {
+                    if (result.getIndex() == null || result.getIndex() < 0 || result.getIndex() >= remote.size()) {
+                        throw new IllegalStateException("The embedding model returned an embedding for text "
+                                + result.getIndex() + " of " + remote.size());
+                    }
+                    Key key = remote.get(result.getIndex());
+                    float[] embedding = FloatList.toArray(result.getOutput());
+                    loaded.put(key, embedding);
+                    if (disk != null) {
+                        disk.write(key.model(), key.text(), embedding);
+                    }
+                }
+            }
+            return loaded;
+        }, executor);
+    }
+
+    private String model(@Nullable EmbeddingOptions options) {
+        if (options instanceof OpenAiEmbeddingOptions openAiOptions && openAiOptions.getModel() != null) {
+            return openAiOptions.getModel();
+        }
+        return defaultModel;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Texts differing only in surrounding or repeated whitespace share one embedding.
+     */
+    static String normalize(String text) {
+        return WHITESPACE.matcher(text.strip()).replaceAll(" ");
+    }
+}
@@ -0,0 +1,84 @@
+package ai.spring.demo.ai.playground.embedding;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.lang.Nullable;
+
+/**
+ * Second cache tier keeping one file of raw little-endian float32 components per
+ * embedding, named after the SHA-256 of model and text. Failures are logged and treated as
+ * misses, the provider stays the source of truth.
+ */
+final class DiskEmbeddingCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(DiskEmbeddingCache.class);
+
+    private final Path directory;
+
+    DiskEmbeddingCache(Path directory) {
+        this.directory = directory;
+        try {
+            Files.createDirectories(directory);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Cannot create embedding cache directory " + directory, e);
+        }
+    }
+
+    @Nullable
+    float[] read(String model, String text) {
+        try {
+            ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(path(model, text))).order(ByteOrder.LITTLE_ENDIAN);
+            float[] embedding = new float[bytes.remaining() / Float.BYTES];
+            bytes.asFloatBuffer().get(embedding);
+            return embedding;
+        }
+        catch (NoSuchFileException e) {
+            return null;
+        }
+        catch (IOException e) {
+            logger.warn("Could not read cached embedding", e);
+            return null;
+        }
+    }
+
+    void write(String model, String text, float[] embedding) {
+        Path target = path(model, text);
+        ByteBuffer bytes = ByteBuffer.allocate(embedding.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.asFloatBuffer().put(embedding);
+        try {
+            Path temporary = Files.createTempFile(directory, target.getFileName().toString(), ".tmp");
+            Files.write(temporary, bytes.array());
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (IOException e) {
+            logger.warn("Could not write cached embedding", e);
+        }
+    }
+
+    private Path path(String model, String text) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            digest.update(model.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(text.getBytes(StandardCharsets.UTF_8));
+            return directory.resolve(HexFormat.of().formatHex(digest.digest()) + ".f32");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package ai.spring.demo.ai.playground.embedding;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Read-only {@code List<Double>} view of a float32 embedding, so that cached embeddings
+ * take a quarter of the memory of boxed lists and are not copied on every hit.
+ */
+final class FloatList extends AbstractList<Double> implements RandomAccess {
+
+    private final float[] values;
+
+    FloatList(float[] values) {
+        this.values = values;
+    }
+
+    static float[] toArray(List<Double> list) {
+        float[] values = new float[list.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = list.get(i).floatValue();
+        }
+        return values;
+    }
+
+    @Override
+    public Double get(int index) {
+        return (double) values[index];
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+}
@@ -0,0 +1,124 @@
+package ai.spring.demo.ai.playground.http;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import io.netty.channel.ChannelOption;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.reactive.ClientHttpConnector;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+
+/**
+ * HTTP transport shared by the clients of the AI models, so that they reuse a bounded pool
+ * of kept-alive connections rather than handshaking again.
+ * <p>
+ * Blocking calls go through an Apache HttpClient pool, which speaks HTTP/1.1 only, and
+ * wait up to the read timeout for the answer. Streamed answers go through a Reactor Netty
+ * pool, which negotiates HTTP/2 with providers that offer it and fails a stream that stays
+ * silent for longer than the stream idle timeout. Both ask for gzip responses.
+ * <p>
+ * The pools publish their connections and pending acquisitions, under
+ * {@code httpcomponents.httpclient.pool} and {@code reactor.netty.connection.provider}
+ * per host. Latency per host is recorded by {@code http.client.requests} with the
+ * {@code client.name} tag, and for streams also by {@code reactor.netty.http.client}.
+ */
+public class ModelHttpTransport implements AutoCloseable {
+
+    private static final String NAME = "models";
+
+    private final CloseableHttpClient blockingClient;
+
+    private final ConnectionProvider connectionProvider;
+
+    private final HttpClient streamingClient;
+
+    public ModelHttpTransport(int maxConnections, int maxConnectionsPerHost, Duration connectTimeout,
+            Duration readTimeout, Duration streamIdleTimeout, Duration acquireTimeout, Duration maxIdleTime,
+            Duration maxLifeTime, boolean http2, MeterRegistry meterRegistry) {
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnectionsPerHost)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(timeout(connectTimeout))
+                        .setSocketTimeout(timeout(readTimeout))
+                        // Reconnects now and then, to follow DNS changes of the provider
+                        .setTimeToLive(TimeValue.ofMilliseconds(maxLifeTime.toMillis()))
+                        .build())
+                .build();
+        new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, NAME).bindTo(meterRegistry);
+        this.blockingClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(timeout(acquireTimeout))
+                        .setResponseTimeout(timeout(readTimeout))
+                        .build())
+                // Content compression is on by default, asking for gzip and deflate
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofMilliseconds(maxIdleTime.toMillis()))
+                .build();
+
+        this.connectionProvider = ConnectionProvider.builder(NAME)
+                .maxConnections(maxConnectionsPerHost)
+                .pendingAcquireTimeout(acquireTimeout)
+                .maxIdleTime(maxIdleTime)
+                .maxLifeTime(maxLifeTime)
+                .evictInBackground(maxIdleTime)
+                .metrics(true)
+                .build();
+        this.streamingClient = HttpClient.create(connectionProvider)
+                // HTTP/2 needs TLS here, plain connections like to the load-test stub stay on HTTP/1.1
+                .protocol(http2 ? new HttpProtocol[] { HttpProtocol.H2, HttpProtocol.HTTP11 }
+                        : new HttpProtocol[] { HttpProtocol.HTTP11 })
+                .compress(true)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis())
+                // The longest silence between two reads of a response, as chunks of a stream
+                .responseTimeout(streamIdleTimeout)
+                .metrics(true, ModelHttpTransport::uriTag);
+    }
+
+    public ClientHttpRequestFactory requestFactory() {
+        return new HttpComponentsClientHttpRequestFactory(blockingClient);
+    }
+
+    public ClientHttpConnector connector() {
+        return new ReactorClientHttpConnector(streamingClient);
+    }
+
+    @Override
+    public void close() {
+        connectionProvider.dispose();
+        try {
+            blockingClient.close();
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Downloads of generated media have unique paths, only the API paths are worth a tag
+    private static String uriTag(String uri) {
+        int query = uri.indexOf('?');
+        String path = query < 0 ? uri : uri.substring(0, query);
+        return path.startsWith("/v1/") ? path : "/other";
+    }
+
+    private static Timeout timeout(Duration duration) {
+        return Timeout.ofMilliseconds(duration.toMillis());
+    }
+}
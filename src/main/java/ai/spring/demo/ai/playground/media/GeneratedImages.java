@@ -0,0 +1,88 @@
+package ai.spring.demo.ai.playground.media;
+
+import java.net.URI;
+import java.nio.file.Path;
+
+import ai.spring.demo.ai.playground.metrics.ModelMetrics;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import org.springframework.ai.image.ImageModel;
+import org.springframework.ai.image.ImageOptions;
+import org.springframework.ai.image.ImagePrompt;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.client.WebClient;
+
+/**
+ * Generated images, cached on disk by prompt and options.
+ * <p>
+ * A new image is generated on a bounded elastic thread, as the model call blocks until the
+ * image is ready, and then downloaded from the URL returned by the provider as a stream of
+ * chunks, which are written to the cache as they pass on to the client. Neither holds the
+ * request thread, and nothing buffers the whole image. The image is only cached once it
+ * was downloaded completely.
+ */
+@Component
+public class GeneratedImages {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final ImageModel imageModel;
+
+    private final ModelMetrics modelMetrics;
+
+    private final WebClient webClient;
+
+    private final MediaCache cache;
+
+    public GeneratedImages(ImageModel imageModel, ModelMetrics modelMetrics, WebClient.Builder webClientBuilder,
+            MeterRegistry meterRegistry,
+            @Value("${playground.media.cache.directory:data/media}") Path directory,
+            @Value("${playground.media.cache.images.max-size:512MB}") DataSize maximumSize) {
+        this.imageModel = imageModel;
+        this.modelMetrics = modelMetrics;
+        this.webClient = webClientBuilder.build();
+        this.cache = new MediaCache("images", directory.resolve("images"), maximumSize.toBytes(), meterRegistry);
+    }
+
+    @Nullable
+    public MediaCache.Entry cached(String prompt, ImageOptions options) {
+        return cache.get(key(prompt, options));
+    }
+
+    /**
+     * Generates an image on subscription and returns its bytes as they are downloaded.
+     */
+    public Flux<byte[]> generate(String prompt, ImageOptions options) {
+        String key = key(prompt, options);
+        return Mono.fromCallable(() -> modelMetrics.call("image",
+                        () -> imageModel.call(new ImagePrompt(prompt, options)).getResult().getOutput().getUrl()))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMapMany(url -> Flux.using(() -> cache.writer(key),
+                        writer -> webClient.get()
+                                .uri(URI.create(url))
+                                .retrieve()
+                                .bodyToFlux(byte[].class)
+                                // Off the event loop, as writing the chunks to the cache and the client blocks
+                                .publishOn(Schedulers.boundedElastic(), 8)
+                                .doOnNext(writer::write)
+                                .doOnComplete(writer::commit),
+                        MediaCache.Writer::close));
+    }
+
+    private static String key(String prompt, ImageOptions options) {
+        try {
+            return MediaCache.key("image", objectMapper.writeValueAsString(options), prompt);
+        }
+        catch (JsonProcessingException e) {
+            return MediaCache.key("image", options.toString(), prompt);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package ai.spring.demo.ai.playground.media;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.stream.Stream;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.lang.Nullable;
+
+/**
+ * Bounded disk cache of generated media, one file per entry named after the SHA-256 of its
+ * key.
+ * <p>
+ * Entries are written to a temporary file while the media is streamed to the client and
+ * moved into place once complete, so readers never see a partial file. The index of the
+ * files, rebuilt from the directory on startup, is a Caffeine cache weighed by file size,
+ * which deletes the files it evicts. Hits and misses are recorded under the cache name.
+ * Failures are logged and treated as misses, the provider stays the source of truth.
+ */
+public class MediaCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(MediaCache.class);
+
+    private static final String SUFFIX = ".bin";
+
+    private final Path directory;
+
+    private final Cache<String, Entry> index;
+
+    /**
+     * A cached file. The ETag changes when the entry is written again.
+     */
+    public record Entry(Path path, long size, String etag) {
+    }
+
+    public MediaCache(String name, Path directory, long maximumSize, MeterRegistry meterRegistry) {
+        this.directory = directory;
+        this.index = CaffeineCacheMetrics.monitor(meterRegistry, Caffeine.newBuilder()
+                .maximumWeight(maximumSize)
+                .<String, Entry>weigher((hash, entry) -> (int) Math.min(Integer.MAX_VALUE, entry.size()))
+                .<String, Entry>evictionListener((hash, entry, cause) -> delete(entry.path()))
+                .recordStats()
+                .build(), name);
+        try {
+            Files.createDirectories(directory);
+            try (Stream<Path> files = Files.list(directory)) {
+                files.forEach(this::restore);
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException("Cannot open media cache directory " + directory, e);
+        }
+    }
+
+    /**
+     * Returns a key made of the given parts.
+     */
+    public static String key(String... parts) {
+        MessageDigest digest = sha256();
+        for (String part : parts) {
+            digest.update(part.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Returns the hash of some content, to make a key of it with other parts.
+     */
+    public static String hash(byte[] content) {
+        return HexFormat.of().formatHex(sha256().digest(content));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Nullable
+    public Entry get(String key) {
+        Entry entry = index.getIfPresent(key);
+        if (entry != null && !Files.exists(entry.path())) {
+            index.asMap().remove(key, entry);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Starts writing the entry for {@code key}, which replaces the current one when it is
+     * committed.
+     */
+    public Writer writer(String key) {
+        return new Writer(key);
+    }
+
+    /**
+     * Writer of a new entry, discarded when closed without being committed. Write failures
+     * are logged once and make the commit a no-op, so that streaming the media to the
+     * client is not affected.
+     */
+    public final class Writer implements Closeable {
+
+        private final String key;
+
+        @Nullable
+        private Path temporary;
+
+        @Nullable
+        private FileChannel channel;
+
+        private long size;
+
+        private boolean committed;
+
+        private Writer(String key) {
+            this.key = key;
+            try {
+                this.temporary = Files.createTempFile(directory, key, ".tmp");
+                this.channel = FileChannel.open(temporary, StandardOpenOption.WRITE);
+            }
+            catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        public void write(byte[] bytes) {
+            if (channel == null) {
+                return;
+            }
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                while (buffer.hasRemaining()) {
+                    size += channel.write(buffer);
+                }
+            }
+            catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        @Nullable
+        public Entry commit() {
+            if (channel == null) {
+                return null;
+            }
+            try {
+                channel.close();
+                channel = null;
+                Path target = directory.resolve(key + SUFFIX);
+                Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                committed = true;
+                Entry entry = entry(key, target, size);
+                index.put(key, entry);
+                return entry;
+            }
+            catch (IOException e) {
+                fail(e);
+                return null;
+            }
+        }
+
+        private void fail(IOException e) {
+            logger.warn("Could not write cached media", e);
+            close();
+        }
+
+        @Override
+        public void close() {
+            if (committed || temporary == null) {
+                return;
+            }
+            try {
+                if (channel != null) {
+                    channel.close();
+                    channel = null;
+                }
+            }
+            catch (IOException e) {
+                // Deleted below anyway
+            }
+            delete(temporary);
+            temporary = null;
+        }
+    }
+
+    private void restore(Path file) {
+        String name = file.getFileName().toString();
+        if (!name.endsWith(SUFFIX)) {
+            // Left over by a crash while writing
+            delete(file);
+            return;
+        }
+        try {
+            String key = name.substring(0, name.length() - SUFFIX.length());
+            index.put(key, entry(key, file, Files.size(file)));
+        }
+        catch (IOException e) {
+            logger.warn("Could not restore cached media {}", file, e);
+        }
+    }
+
+    private static Entry entry(String key, Path path, long size) throws IOException {
+        long modified = Files.getLastModifiedTime(path).toMillis();
+        return new Entry(path, size, key.substring(0, 16) + "-" + Long.toHexString(modified));
+    }
+
+    private static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        }
+        catch (IOException e) {
+            logger.warn("Could not delete cached media {}", path, e);
+        }
+    }
+}
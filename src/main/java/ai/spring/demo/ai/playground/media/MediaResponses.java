@@ -0,0 +1,110 @@
+package ai.spring.demo.ai.playground.media;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import reactor.core.Disposable;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+/**
+ * Responses serving media from a {@link MediaCache} or streaming it as it is generated.
+ */
+public final class MediaResponses {
+
+    // Tomcat's request attributes for writing a file with sendfile, as its DefaultServlet does
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private MediaResponses() {
+    }
+
+    /**
+     * Writes a cached entry, answering conditional requests by its ETag and serving a
+     * single byte range when asked for one. The file is handed to the connector to send
+     * without copying when it supports that, and written from a memory mapping otherwise.
+     */
+    public static void serve(MediaCache.Entry entry, MediaType contentType, HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        if (new ServletWebRequest(request, response).checkNotModified(entry.etag())) {
+            return;
+        }
+        long size = entry.size();
+        long start = 0;
+        long end = size - 1;
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        String range = request.getHeader(HttpHeaders.RANGE);
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (range != null && (ifRange == null || ifRange.contains(entry.etag()))) {
+            try {
+                List<HttpRange> ranges = HttpRange.parseRanges(range);
+                // Several ranges are rare for media, they get the whole file
+                if (ranges.size() == 1) {
+                    start = ranges.get(0).getRangeStart(size);
+                    end = ranges.get(0).getRangeEnd(size);
+                    response.setStatus(HttpStatus.PARTIAL_CONTENT.value());
+                    response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+                }
+            }
+            catch (IllegalArgumentException e) {
+                response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + size);
+                response.sendError(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+                return;
+            }
+        }
+        response.setContentType(contentType.toString());
+        response.setContentLengthLong(end - start + 1);
+        if ("HEAD".equals(request.getMethod())) {
+            return;
+        }
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            request.setAttribute(SENDFILE_FILENAME, entry.path().toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            return;
+        }
+        try (FileChannel file = FileChannel.open(entry.path())) {
+            // Mapped, so that hits are copied from the page cache without a read per chunk
+            MappedByteBuffer mapped = file.map(FileChannel.MapMode.READ_ONLY, start, end + 1 - start);
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            while (mapped.hasRemaining()) {
+                out.write(mapped);
+            }
+        }
+    }
+
+    /**
+     * Streams chunks to the client as they arrive, without holding a request thread. The
+     * source is cancelled when the client goes away.
+     */
+    public static ResponseEntity<ResponseBodyEmitter> stream(Flux<byte[]> chunks, MediaType contentType) {
+        var emitter = new ResponseBodyEmitter();
+        Disposable subscription = chunks.subscribe(chunk -> {
+            try {
+                emitter.send(chunk, contentType);
+            }
+            catch (IOException e) {
+                throw Exceptions.propagate(e);
+            }
+        }, emitter::completeWithError, emitter::complete);
+        emitter.onTimeout(subscription::dispose);
+        emitter.onError(error -> subscription.dispose());
+        return ResponseEntity.ok().contentType(contentType).body(emitter);
+    }
+}
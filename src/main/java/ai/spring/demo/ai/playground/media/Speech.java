@@ -0,0 +1,113 @@
+package ai.spring.demo.ai.playground.media;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import org.springframework.ai.openai.api.OpenAiAudioApi;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Synthesized speech, cached on disk by text, voice, model, speed and format.
+ * <p>
+ * New speech is streamed from the provider as it is synthesized and written to the cache
+ * on the way, like {@link GeneratedImages}. The time to the first byte from the provider is
+ * recorded by {@code playground.media.first.byte}. Cached speech is sent by the connector
+ * after the request returns, so for hits only the time until the file is handed to it, or
+ * written when the connector cannot send files, is recorded by
+ * {@code playground.media.cache.serve}. The hit rate is published with the other cache
+ * metrics under the name {@code speech}.
+ */
+@Component
+public class Speech {
+
+    private final OpenAiAudioApi audioApi;
+
+    private final MediaCache cache;
+
+    private final Timer providerFirstByte;
+
+    private final Timer cacheServe;
+
+    public Speech(OpenAiAudioApi audioApi, MeterRegistry meterRegistry,
+            @Value("${playground.media.cache.directory:data/media}") Path directory,
+            @Value("${playground.media.cache.speech.max-size:256MB}") DataSize maximumSize) {
+        this.audioApi = audioApi;
+        this.cache = new MediaCache("speech", directory.resolve("speech"), maximumSize.toBytes(), meterRegistry);
+        this.providerFirstByte = Timer.builder("playground.media.first.byte")
+                .description("Time from the request to the first byte of media from the provider")
+                .tag("media", "speech")
+                .register(meterRegistry);
+        this.cacheServe = Timer.builder("playground.media.cache.serve")
+                .description("Time to hand cached media to the connector, or to write it")
+                .tag("media", "speech")
+                .register(meterRegistry);
+    }
+
+    @Nullable
+    public MediaCache.Entry cached(OpenAiAudioApi.SpeechRequest request) {
+        return cache.get(key(request));
+    }
+
+    /**
+     * Serves cached speech, see {@link MediaResponses#serve}.
+     */
+    public void serve(MediaCache.Entry entry, OpenAiAudioApi.SpeechRequest request, HttpServletRequest httpRequest,
+            HttpServletResponse httpResponse) throws IOException {
+        long start = System.nanoTime();
+        MediaResponses.serve(entry, contentType(request), httpRequest, httpResponse);
+        cacheServe.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Synthesizes speech and returns the audio as it arrives.
+     */
+    public Flux<byte[]> synthesize(OpenAiAudioApi.SpeechRequest request) {
+        String key = key(request);
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            return Flux.using(() -> cache.writer(key),
+                    writer -> audioApi.stream(request)
+                            .map(ResponseEntity::getBody)
+                            .filter(Objects::nonNull)
+                            .index((index, chunk) -> {
+                                if (index == 0) {
+                                    providerFirstByte.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                                }
+                                return chunk;
+                            })
+                            // Off the event loop, as writing the chunks to the cache and the client blocks
+                            .publishOn(Schedulers.boundedElastic(), 8)
+                            .doOnNext(writer::write)
+                            .doOnComplete(writer::commit),
+                    MediaCache.Writer::close);
+        });
+    }
+
+    public static MediaType contentType(OpenAiAudioApi.SpeechRequest request) {
+        return switch (request.responseFormat()) {
+            case MP3 -> MediaType.parseMediaType("audio/mpeg");
+            case OPUS -> MediaType.parseMediaType("audio/ogg");
+            case AAC -> MediaType.parseMediaType("audio/aac");
+            case FLAC -> MediaType.parseMediaType("audio/flac");
+        };
+    }
+
+    private static String key(OpenAiAudioApi.SpeechRequest request) {
+        return MediaCache.key("speech", request.input(), request.voice().getValue(), request.model(),
+                String.valueOf(request.speed()), request.responseFormat().getValue());
+    }
+}
@@ -0,0 +1,282 @@
+package ai.spring.demo.ai.playground.media;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import ai.spring.demo.ai.playground.metrics.ModelMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.function.Tuple2;
+
+import org.springframework.ai.audio.transcription.AudioTranscriptionPrompt;
+import org.springframework.ai.openai.OpenAiAudioTranscriptionModel;
+import org.springframework.ai.openai.OpenAiAudioTranscriptionOptions;
+import org.springframework.ai.openai.api.OpenAiAudioApi;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Audio transcriptions, cached on disk by the hash of the audio, the language and the
+ * response format.
+ * <p>
+ * Plain text transcriptions of recordings longer than the segment length are split with
+ * ffmpeg into segments overlapping by a few seconds, which are transcribed concurrently up
+ * to the configured parallelism. The transcripts of the segments are emitted in order as
+ * they are ready, without the words repeated by the overlap. Other response formats carry
+ * timestamps that cannot be stitched this way, so they are transcribed in one call, as are
+ * all recordings when ffmpeg is not available.
+ */
+@Component
+public class Transcriptions {
+
+    private static final Logger logger = LoggerFactory.getLogger(Transcriptions.class);
+
+    private final OpenAiAudioTranscriptionModel transcriptionModel;
+
+    private final ModelMetrics modelMetrics;
+
+    private final MediaCache cache;
+
+    private final Duration segmentLength;
+
+    private final Duration overlap;
+
+    private final int parallelism;
+
+    private final String ffmpeg;
+
+    private final String ffprobe;
+
+    @Nullable
+    private volatile Boolean segmenting;
+
+    public Transcriptions(OpenAiAudioTranscriptionModel transcriptionModel, ModelMetrics modelMetrics,
+            MeterRegistry meterRegistry,
+            @Value("${playground.media.cache.directory:data/media}") Path directory,
+            @Value("${playground.media.cache.transcriptions.max-size:16MB}") DataSize maximumSize,
+            @Value("${playground.media.transcription.segment-length:5m}") Duration segmentLength,
+            @Value("${playground.media.transcription.overlap:3s}") Duration overlap,
+            @Value("${playground.media.transcription.parallelism:4}") int parallelism,
+            @Value("${playground.media.transcription.ffmpeg:ffmpeg}") String ffmpeg,
+            @Value("${playground.media.transcription.ffprobe:ffprobe}") String ffprobe) {
+        this.transcriptionModel = transcriptionModel;
+        this.modelMetrics = modelMetrics;
+        this.cache = new MediaCache("transcriptions", directory.resolve("transcriptions"), maximumSize.toBytes(),
+                meterRegistry);
+        this.segmentLength = segmentLength;
+        this.overlap = overlap;
+        this.parallelism = parallelism;
+        this.ffmpeg = ffmpeg;
+        this.ffprobe = ffprobe;
+    }
+
+    /**
+     * Returns the whole transcription.
+     */
+    public String transcribe(Resource audio, OpenAiAudioTranscriptionOptions options) {
+        return String.join(" ", Objects.requireNonNull(transcribeIncrementally(audio, options).collectList().block()));
+    }
+
+    /**
+     * Returns the transcription in parts, one per segment, as the segments are transcribed.
+     * The parts are in order and joined by a space make the whole transcription.
+     */
+    public Flux<String> transcribeIncrementally(Resource audio, OpenAiAudioTranscriptionOptions options) {
+        return Mono.fromCallable(audio::getContentAsByteArray)
+                .flatMapMany(content -> {
+                    String key = MediaCache.key("transcription", MediaCache.hash(content),
+                            String.valueOf(options.getLanguage()), String.valueOf(options.getResponseFormat()));
+                    MediaCache.Entry cached = cache.get(key);
+                    if (cached != null) {
+                        return Mono.fromCallable(() -> Files.readString(cached.path())).flux();
+                    }
+                    return Flux.using(() -> cache.writer(key),
+                            writer -> transcribe(content, options)
+                                    .index()
+                                    .doOnNext(part -> writer.write(((part.getT1() == 0 ? "" : " ") + part.getT2())
+                                            .getBytes(StandardCharsets.UTF_8)))
+                                    .map(Tuple2::getT2)
+                                    .doOnComplete(writer::commit),
+                            MediaCache.Writer::close);
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private Flux<String> transcribe(byte[] content, OpenAiAudioTranscriptionOptions options) {
+        if (options.getResponseFormat() != OpenAiAudioApi.TranscriptResponseFormat.TEXT || !segmenting()) {
+            return Mono.fromCallable(() -> call(new ByteArrayResource(content), options)).flux();
+        }
+        return Flux.using(() -> Files.write(Files.createTempFile("transcription", ".audio"), content),
+                recording -> {
+                    int segments = segments(recording);
+                    if (segments < 2) {
+                        return Mono.fromCallable(() -> call(new ByteArrayResource(content), options)).flux();
+                    }
+                    var stitcher = new Stitcher();
+                    return Flux.range(0, segments)
+                            .flatMapSequential(segment -> Mono.fromCallable(() -> transcribe(recording, segment, options))
+                                    .subscribeOn(Schedulers.boundedElastic()), parallelism, 1)
+                            .map(stitcher::next)
+                            .filter(part -> !part.isEmpty());
+                },
+                Transcriptions::delete);
+    }
+
+    private String transcribe(Path recording, int segment, OpenAiAudioTranscriptionOptions options)
+            throws IOException {
+        Path file = Files.createTempFile("transcription-" + segment, ".flac");
+        try {
+            long start = segmentLength.multipliedBy(segment).toMillis();
+            long length = segmentLength.plus(overlap).toMillis();
+            // Whisper works on 16 kHz mono, which keeps the segments small, and every build
+            // of ffmpeg has a FLAC encoder
+            run(ffmpeg, "-v", "error", "-y", "-ss", seconds(start), "-t", seconds(length), "-i",
+                    recording.toString(), "-vn", "-ac", "1", "-ar", "16000", "-c:a", "flac", "-f", "flac",
+                    file.toString());
+            return call(new FileSystemResource(file), options);
+        }
+        finally {
+            delete(file);
+        }
+    }
+
+    private String call(Resource audio, OpenAiAudioTranscriptionOptions options) {
+        return modelMetrics.call("transcription",
+                () -> transcriptionModel.call(new AudioTranscriptionPrompt(audio, options)).getResult().getOutput());
+    }
+
+    /**
+     * Returns whether ffmpeg and ffprobe are installed, which is only looked up once.
+     */
+    private boolean segmenting() {
+        Boolean segmenting = this.segmenting;
+        if (segmenting == null) {
+            try {
+                run(ffmpeg, "-version");
+                run(ffprobe, "-version");
+                segmenting = true;
+            }
+            catch (IOException e) {
+                logger.info("Not segmenting long recordings, as ffmpeg is not available: {}", e.getMessage());
+                segmenting = false;
+            }
+            this.segmenting = segmenting;
+        }
+        return segmenting;
+    }
+
+    /**
+     * Returns the number of segments of a recording, 1 when it is short enough or its
+     * duration is unknown.
+     */
+    private int segments(Path recording) {
+        String duration = "";
+        try {
+            duration = run(ffprobe, "-v", "error", "-show_entries", "format=duration", "-of",
+                    "default=noprint_wrappers=1:nokey=1", recording.toString()).trim();
+            long millis = (long) (Double.parseDouble(duration) * 1000);
+            if (millis <= segmentLength.plus(overlap).toMillis()) {
+                return 1;
+            }
+            return (int) ((millis - overlap.toMillis() + segmentLength.toMillis() - 1) / segmentLength.toMillis());
+        }
+        catch (IOException | NumberFormatException e) {
+            // Left to the provider to make sense of
+            logger.warn("Unknown duration of recording: {}", e instanceof IOException ? e.getMessage() : duration);
+            return 1;
+        }
+    }
+
+    private static String run(String... command) throws IOException {
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        String output;
+        try (InputStream in = process.getInputStream()) {
+            output = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        try {
+            if (process.waitFor() != 0) {
+                throw new IOException(command[0] + " failed: " + output.trim());
+            }
+        }
+        catch (InterruptedException e) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while running " + command[0]);
+        }
+        return output;
+    }
+
+    private static String seconds(long millis) {
+        return String.format(Locale.ROOT, "%d.%03d", millis / 1000, millis % 1000);
+    }
+
+    private static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        }
+        catch (IOException e) {
+            logger.warn("Could not delete {}", path, e);
+        }
+    }
+
+    /**
+     * Drops the words a segment repeats from the end of the previous one, which are found
+     * as the longest run of the last words of the previous segment that starts the next
+     * one, ignoring case and punctuation.
+     */
+    static final class Stitcher {
+
+        private static final Pattern WORD = Pattern.compile("\\S+");
+
+        // Words spoken in the overlap, with some margin
+        private static final int MAX_OVERLAP_WORDS = 30;
+
+        private List<String> previous = List.of();
+
+        String next(String text) {
+            List<String> words = new ArrayList<>();
+            List<Integer> ends = new ArrayList<>();
+            Matcher matcher = WORD.matcher(text);
+            while (matcher.find()) {
+                words.add(normalize(matcher.group()));
+                ends.add(matcher.end());
+            }
+            int overlap = overlap(previous, words);
+            previous = words.subList(Math.max(0, words.size() - MAX_OVERLAP_WORDS), words.size());
+            return (overlap == 0 ? text : text.substring(ends.get(overlap - 1))).strip();
+        }
+
+        private static int overlap(List<String> previous, List<String> next) {
+            for (int length = Math.min(MAX_OVERLAP_WORDS, Math.min(previous.size(), next.size())); length > 0; length--) {
+                if (previous.subList(previous.size() - length, previous.size()).equals(next.subList(0, length))) {
+                    return length;
+                }
+            }
+            return 0;
+        }
+
+        private static String normalize(String word) {
+            return word.replaceAll("[\\p{Punct}\\p{IsPunctuation}]", "").toLowerCase(Locale.ROOT);
+        }
+    }
+}
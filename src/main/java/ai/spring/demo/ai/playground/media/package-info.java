@@ -0,0 +1,4 @@
+@NonNullApi
+package ai.spring.demo.ai.playground.media;
+
+import org.springframework.lang.NonNullApi;
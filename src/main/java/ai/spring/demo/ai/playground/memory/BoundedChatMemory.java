@@ -0,0 +1,262 @@
+package ai.spring.demo.ai.playground.memory;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.Message;
+
+/**
+ * {@link ChatMemory} with bounded memory use.
+ * <p>
+ * Each conversation keeps its last {@code maxMessages} messages in a ring buffer.
+ * Conversations idle for longer than {@code idleTimeout} are dropped by a background sweep,
+ * and when the estimated size of all conversations exceeds {@code maxBytes} the least
+ * recently used ones are evicted until it is back under 90% of the budget.
+ * <p>
+ * Conversations are guarded by a fixed set of striped locks, so concurrent chats rarely
+ * contend. The number of conversations, their estimated size and evictions are published
+ * as {@code playground.chat.memory.*} metrics.
+ */
+public class BoundedChatMemory implements ChatMemory, Closeable {
+
+    private static final int STRIPES = 64;
+
+    // Rough per-message overhead of the message object, its metadata map and the ring slot
+    private static final int MESSAGE_OVERHEAD = 128;
+
+    private final int maxMessages;
+
+    private final long idleTimeoutNanos;
+
+    private final long maxBytes;
+
+    private final Map<String, Conversation> conversations = new ConcurrentHashMap<>();
+
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    private final AtomicLong totalBytes = new AtomicLong();
+
+    private final ScheduledExecutorService sweeper;
+
+    private final Counter expired;
+
+    private final Counter evicted;
+
+    private static final class Conversation {
+
+        final Message[] messages;
+        int head;
+        int size;
+        long bytes;
+        volatile long lastAccess;
+
+        Conversation(int capacity) {
+            this.messages = new Message[capacity];
+        }
+
+        /**
+         * Appends a message, overwriting the oldest one when full.
+         * @return the change in estimated bytes
+         */
+        long add(Message message) {
+            long delta = estimateBytes(message);
+            int slot = (head + size) % messages.length;
+            if (size == messages.length) {
+                delta -= estimateBytes(messages[head]);
+                head = (head + 1) % messages.length;
+            }
+            else {
+                size++;
+            }
+            messages[slot] = message;
+            bytes += delta;
+            return delta;
+        }
+
+        List<Message> last(int n) {
+            int count = Math.min(n, size);
+            List<Message> last = new ArrayList<>(count);
+            for (int i = size - count; i < size; i++) {
+                last.add(messages[(head + i) % messages.length]);
+            }
+            return last;
+        }
+    }
+
+    private record Candidate(String id, Conversation conversation, long lastAccess) {
+    }
+
+    public BoundedChatMemory(int maxMessages, Duration idleTimeout, long maxBytes, MeterRegistry meterRegistry) {
+        this.maxMessages = maxMessages;
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+        this.maxBytes = maxBytes;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        Gauge.builder("playground.chat.memory.conversations", conversations, Map::size)
+                .description("Conversations held in chat memory")
+                .register(meterRegistry);
+        Gauge.builder("playground.chat.memory.bytes", totalBytes, AtomicLong::get)
+                .description("Estimated size of the messages held in chat memory")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.expired = Counter.builder("playground.chat.memory.evictions").tag("cause", "idle").register(meterRegistry);
+        this.evicted = Counter.builder("playground.chat.memory.evictions").tag("cause", "size").register(meterRegistry);
+
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("chat-memory-sweeper").daemon().factory());
+        long period = Math.max(TimeUnit.SECONDS.toNanos(1), idleTimeoutNanos / 4);
+        sweeper.scheduleWithFixedDelay(this::expireIdle, period, period, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        ReentrantLock lock = stripe(conversationId);
+        lock.lock();
+        try {
+            Conversation conversation = conversations.computeIfAbsent(conversationId,
+                    id -> new Conversation(maxMessages));
+            long delta = 0;
+            for (Message message : messages) {
+                delta += conversation.add(message);
+            }
+            conversation.lastAccess = System.nanoTime();
+            totalBytes.addAndGet(delta);
+        }
+        finally {
+            lock.unlock();
+        }
+        if (totalBytes.get() > maxBytes) {
+            evictLeastRecentlyUsed();
+        }
+    }
+
+    @Override
+    public List<Message> get(String conversationId, int lastN) {
+        ReentrantLock lock = stripe(conversationId);
+        lock.lock();
+        try {
+            Conversation conversation = conversations.get(conversationId);
+            if (conversation == null) {
+                return List.of();
+            }
+            conversation.lastAccess = System.nanoTime();
+            return conversation.last(lastN);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        Conversation conversation = conversations.get(conversationId);
+        if (conversation != null) {
+            remove(conversationId, conversation);
+        }
+    }
+
+    /**
+     * Returns whether the conversation is currently held in memory.
+     */
+    public boolean contains(String conversationId) {
+        return conversations.containsKey(conversationId);
+    }
+
+    public int size() {
+        return conversations.size();
+    }
+
+    public long bytes() {
+        return totalBytes.get();
+    }
+
+    /**
+     * Removes a conversation unless it was replaced in the meantime.
+     * @return {@code true} if it was removed
+     */
+    private boolean remove(String conversationId, Conversation conversation) {
+        ReentrantLock lock = stripe(conversationId);
+        lock.lock();
+        try {
+            if (conversations.remove(conversationId, conversation)) {
+                totalBytes.addAndGet(-conversation.bytes);
+                return true;
+            }
+            return false;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    private void expireIdle() {
+        long now = System.nanoTime();
+        conversations.forEach((id, conversation) -> {
+            if (now - conversation.lastAccess > idleTimeoutNanos && remove(id, conversation)) {
+                expired.increment();
+            }
+        });
+    }
+
+    private void evictLeastRecentlyUsed() {
+        // One thread evicts for everybody, the others carry on
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            long target = maxBytes / 10 * 9;
+            if (totalBytes.get() <= target) {
+                return;
+            }
+            // Snapshot the access times, they keep changing while we sort
+            List<Candidate> candidates = new ArrayList<>(conversations.size());
+            conversations.forEach((id, conversation) -> candidates.add(new Candidate(id, conversation,
+                    conversation.lastAccess)));
+            candidates.sort(Comparator.comparingLong(Candidate::lastAccess));
+            for (Candidate candidate : candidates) {
+                if (totalBytes.get() <= target) {
+                    break;
+                }
+                if (remove(candidate.id(), candidate.conversation())) {
+                    evicted.increment();
+                }
+            }
+        }
+        finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private ReentrantLock stripe(String conversationId) {
+        int hash = conversationId.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+    }
+
+    static long estimateBytes(Message message) {
+        String content = message.getContent();
+        return MESSAGE_OVERHEAD + (content == null ? 0 : 2L * content.length());
+    }
+
+    @Override
+    public void close() {
+        sweeper.shutdownNow();
+    }
+}
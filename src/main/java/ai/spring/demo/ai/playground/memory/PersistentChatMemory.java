@@ -0,0 +1,751 @@
+package ai.spring.demo.ai.playground.memory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+
+/**
+ * {@link ChatMemory} decorator persisting conversations to a segmented log on local disk,
+ * while the hot conversations stay in a {@link BoundedChatMemory}.
+ * <p>
+ * Appends are handed to a writer thread which writes everything queued up in one go and
+ * forces it in the background (write-behind), so callers never wait on the disk. The writer
+ * keeps an index of the log positions of the last {@code maxMessages} messages of every
+ * conversation; a conversation that is not in memory, because the application restarted or
+ * it was evicted, is rehydrated from those positions on first access. Once
+ * {@code compactAfterSegments} full segments have piled up they are rewritten into a single
+ * segment holding only the indexed messages.
+ * <p>
+ * Conversations not written to for longer than the retention are dropped from the index,
+ * checked about once a minute, and left out of the next compaction. The last write of a
+ * conversation is taken from the modification time of its newest segment, and recorded in
+ * compacted segments, so it may be later than the actual write but never earlier.
+ * <p>
+ * Record layout: {@code [int payloadLength][byte type][payload][int crc32c]}, the checksum
+ * covering type and payload. A compacted segment starts with a marker record superseding
+ * all earlier segments, so a crash before they are deleted does not duplicate messages.
+ * It is followed by a touched record per conversation, holding the time of its last write.
+ * Only user, assistant and system messages are persisted, by their text.
+ */
+public class PersistentChatMemory implements ChatMemory, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(PersistentChatMemory.class);
+
+    private static final byte ADD = 1;
+
+    private static final byte CLEAR = 2;
+
+    private static final byte COMPACTED = 3;
+
+    private static final byte TOUCHED = 4;
+
+    private static final int HEADER_SIZE = Integer.BYTES + Byte.BYTES;
+
+    private static final int MAX_BATCH = 4096;
+
+    private static final int STRIPES = 64;
+
+    private static final int OFFSET_BITS = 40;
+
+    private static final long EXPIRY_INTERVAL = TimeUnit.MINUTES.toNanos(1);
+
+    private final BoundedChatMemory hot;
+
+    private final Path directory;
+
+    private final int maxMessages;
+
+    private final long segmentSize;
+
+    private final int compactAfterSegments;
+
+    // Zero keeps conversations for good
+    private final Duration retention;
+
+    private final BlockingQueue<Operation> queue = new LinkedBlockingQueue<>();
+
+    // Mutated by the writer thread only
+    private final Map<String, Positions> index = new ConcurrentHashMap<>();
+
+    // Clears not written yet, so that rehydration does not bring back cleared messages
+    private final Map<String, Clear> clearing = new ConcurrentHashMap<>();
+
+    // Rehydration reads share it, compaction replaces segments under the write lock
+    private final ReadWriteLock segmentsLock = new ReentrantReadWriteLock();
+
+    private final Map<Long, FileChannel> readers = new ConcurrentHashMap<>();
+
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+
+    // Owned by the writer thread
+    private FileChannel segment;
+    private long segmentNumber;
+    private long segmentPosition;
+    private int closedSegments;
+    private long lastExpiry = System.nanoTime();
+    private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+    private volatile boolean closed;
+
+    private final Counter rehydrations;
+
+    private final Timer flushes;
+
+    private final Timer compactions;
+
+    private sealed interface Operation {
+    }
+
+    private record Append(String conversationId, byte messageType, String content) implements Operation {
+    }
+
+    private record Clear(String conversationId) implements Operation {
+    }
+
+    private record Close(CompletableFuture<Void> done) implements Operation {
+    }
+
+    /**
+     * Log positions of the last messages of a conversation, packed as segment number and
+     * offset.
+     */
+    private static final class Positions {
+
+        private final int capacity;
+
+        // Guarded by this
+        private long[] ring;
+        private int start;
+        private int count;
+
+        // Epoch millis, written by the writer thread only
+        private volatile long lastWrite;
+
+        Positions(int capacity) {
+            this.capacity = capacity;
+            this.ring = new long[Math.min(capacity, 8)];
+        }
+
+        synchronized void add(long position) {
+            if (count < ring.length) {
+                ring[(start + count++) % ring.length] = position;
+                return;
+            }
+            if (ring.length < capacity) {
+                long[] larger = new long[Math.min(capacity, ring.length * 2)];
+                for (int i = 0; i < count; i++) {
+                    larger[i] = ring[(start + i) % ring.length];
+                }
+                ring = larger;
+                start = 0;
+                ring[count++] = position;
+                return;
+            }
+            ring[start] = position;
+            start = (start + 1) % ring.length;
+        }
+
+        synchronized long[] toArray() {
+            long[] positions = new long[count];
+            for (int i = 0; i < count; i++) {
+                positions[i] = ring[(start + i) % ring.length];
+            }
+            return positions;
+        }
+
+        synchronized void replace(long[] positions) {
+            ring = Arrays.copyOf(positions, Math.max(positions.length, Math.min(capacity, 8)));
+            start = 0;
+            count = positions.length;
+        }
+
+        void touch(long time) {
+            lastWrite = Math.max(lastWrite, time);
+        }
+
+        long lastWrite() {
+            return lastWrite;
+        }
+    }
+
+    public PersistentChatMemory(BoundedChatMemory hot, Path directory, int maxMessages, long segmentSize,
+            int compactAfterSegments, Duration retention, MeterRegistry meterRegistry) {
+        this.hot = hot;
+        this.directory = directory;
+        this.maxMessages = maxMessages;
+        this.segmentSize = segmentSize;
+        this.compactAfterSegments = compactAfterSegments;
+        this.retention = retention;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        try {
+            Files.createDirectories(directory);
+            long last = scan();
+            openSegment(last + 1);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Gauge.builder("playground.chat.memory.persistence.queue", queue, BlockingQueue::size)
+                .description("Chat memory changes waiting to be written")
+                .register(meterRegistry);
+        Gauge.builder("playground.chat.memory.persistence.conversations", index, Map::size)
+                .description("Conversations in the chat memory log")
+                .register(meterRegistry);
+        this.rehydrations = Counter.builder("playground.chat.memory.persistence.rehydrations")
+                .description("Conversations loaded back from the chat memory log")
+                .register(meterRegistry);
+        this.flushes = Timer.builder("playground.chat.memory.persistence.flushes")
+                .description("Writes of batched chat memory changes")
+                .register(meterRegistry);
+        this.compactions = Timer.builder("playground.chat.memory.persistence.compactions")
+                .register(meterRegistry);
+        Thread.ofPlatform().name("chat-memory-writer").daemon().start(this::run);
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        ReentrantLock lock = stripe(conversationId);
+        lock.lock();
+        try {
+            rehydrate(conversationId);
+            hot.add(conversationId, messages);
+            for (Message message : messages) {
+                byte type = switch (message.getMessageType()) {
+                    case USER -> 1;
+                    case ASSISTANT -> 2;
+                    case SYSTEM -> 3;
+                    default -> 0;
+                };
+                if (type != 0 && message.getContent() != null) {
+                    enqueue(new Append(conversationId, type, message.getContent()));
+                }
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<Message> get(String conversationId, int lastN) {
+        ReentrantLock lock = stripe(conversationId);
+        lock.lock();
+        try {
+            rehydrate(conversationId);
+        }
+        finally {
+            lock.unlock();
+        }
+        return hot.get(conversationId, lastN);
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        ReentrantLock lock = stripe(conversationId);
+        lock.lock();
+        try {
+            var clear = new Clear(conversationId);
+            clearing.put(conversationId, clear);
+            hot.clear(conversationId);
+            enqueue(clear);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    private ReentrantLock stripe(String conversationId) {
+        return stripes[(conversationId.hashCode() & 0x7fffffff) % STRIPES];
+    }
+
+    private void enqueue(Operation operation) {
+        if (closed) {
+            throw new IllegalStateException("Chat memory log is closed");
+        }
+        queue.add(operation);
+    }
+
+    /**
+     * Loads the logged messages of a conversation that is not in memory. Messages still
+     * queued for the writer are not indexed yet; they can only be missed if the conversation
+     * is evicted right after they were added.
+     */
+    private void rehydrate(String conversationId) {
+        if (hot.contains(conversationId) || clearing.containsKey(conversationId)) {
+            return;
+        }
+        List<Message> messages = new ArrayList<>();
+        segmentsLock.readLock().lock();
+        try {
+            Positions positions = index.get(conversationId);
+            if (positions == null || expired(positions, System.currentTimeMillis())) {
+                return;
+            }
+            for (long position : positions.toArray()) {
+                ByteBuffer payload = read(position);
+                getString(payload);
+                byte type = payload.get();
+                String content = getString(payload);
+                messages.add(switch (type) {
+                    case 1 -> new UserMessage(content);
+                    case 2 -> new AssistantMessage(content);
+                    default -> new SystemMessage(content);
+                });
+            }
+        }
+        catch (IOException | UncheckedIOException e) {
+            logger.warn("Could not load conversation {} from the chat memory log", conversationId, e);
+            return;
+        }
+        finally {
+            segmentsLock.readLock().unlock();
+        }
+        if (!messages.isEmpty()) {
+            hot.add(conversationId, messages);
+            rehydrations.increment();
+        }
+    }
+
+    /**
+     * Reads the payload of the record at {@code position}, which must be indexed.
+     */
+    private ByteBuffer read(long position) throws IOException {
+        long number = position >>> OFFSET_BITS;
+        long offset = position & ((1L << OFFSET_BITS) - 1);
+        FileChannel channel = readers.get(number);
+        if (channel == null) {
+            channel = readers.computeIfAbsent(number, n -> {
+                try {
+                    return FileChannel.open(segmentPath(n), StandardOpenOption.READ);
+                }
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(channel, header, offset);
+        ByteBuffer payload = ByteBuffer.allocate(header.getInt(0));
+        readFully(channel, payload, offset + HEADER_SIZE);
+        return payload.flip();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer target, long position) throws IOException {
+        while (target.hasRemaining()) {
+            if (channel.read(target, position + target.position()) < 0) {
+                throw new IOException("Unexpected end of chat memory segment");
+            }
+        }
+    }
+
+    private void run() {
+        var batch = new ArrayList<Operation>();
+        var written = new ArrayList<Operation>();
+        var offsets = new ArrayList<Long>();
+        while (true) {
+            try {
+                Operation first = queue.poll(EXPIRY_INTERVAL, TimeUnit.NANOSECONDS);
+                if (System.nanoTime() - lastExpiry >= EXPIRY_INTERVAL) {
+                    expire();
+                }
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            queue.drainTo(batch, MAX_BATCH - 1);
+            Close close = null;
+            for (Operation operation : batch) {
+                switch (operation) {
+                    case Append append -> {
+                        offsets.add(segmentPosition + buffer.position());
+                        write(ADD, append.conversationId(), append.messageType(), append.content());
+                        written.add(append);
+                    }
+                    case Clear clear -> {
+                        offsets.add(segmentPosition + buffer.position());
+                        write(CLEAR, clear.conversationId(), (byte) 0, null);
+                        written.add(clear);
+                    }
+                    case Close c -> close = c;
+                }
+            }
+            batch.clear();
+            try {
+                flush(written, offsets);
+                if (close != null) {
+                    segment.close();
+                    readers.values().forEach(PersistentChatMemory::closeQuietly);
+                    close.done().complete(null);
+                    return;
+                }
+                if (segmentPosition >= segmentSize) {
+                    segment.close();
+                    closedSegments++;
+                    openSegment(segmentNumber + 1);
+                    if (closedSegments >= compactAfterSegments) {
+                        compactions.record(this::compact);
+                    }
+                }
+            }
+            catch (IOException | UncheckedIOException e) {
+                logger.error("Chat memory log write failed, {} changes are only kept in memory", written.size(), e);
+                buffer.clear();
+                try {
+                    segment.close();
+                    closedSegments++;
+                    openSegment(segmentNumber + 1);
+                }
+                catch (IOException | UncheckedIOException reopenFailure) {
+                    logger.error("Could not start a new chat memory segment", reopenFailure);
+                }
+                if (close != null) {
+                    close.done().complete(null);
+                    return;
+                }
+            }
+            written.clear();
+            offsets.clear();
+        }
+    }
+
+    private void write(byte type, String conversationId, byte messageType, String content) {
+        byte[] id = conversationId.getBytes(StandardCharsets.UTF_8);
+        byte[] text = content == null ? null : content.getBytes(StandardCharsets.UTF_8);
+        int payloadLength = Integer.BYTES + id.length + (text == null ? 0 : Byte.BYTES + Integer.BYTES + text.length);
+        int recordLength = HEADER_SIZE + payloadLength + Integer.BYTES;
+        if (buffer.remaining() < recordLength) {
+            var larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + recordLength));
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+        int start = buffer.position();
+        buffer.putInt(payloadLength);
+        buffer.put(type);
+        buffer.putInt(id.length).put(id);
+        if (text != null) {
+            buffer.put(messageType);
+            buffer.putInt(text.length).put(text);
+        }
+        var crc = new CRC32C();
+        crc.update(buffer.array(), start + Integer.BYTES, Byte.BYTES + payloadLength);
+        buffer.putInt((int) crc.getValue());
+    }
+
+    /**
+     * Writes and forces the buffered records, then makes them visible to rehydration.
+     */
+    private void flush(List<Operation> written, List<Long> offsets) throws IOException {
+        if (buffer.position() == 0) {
+            return;
+        }
+        long start = System.nanoTime();
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            segmentPosition += segment.write(buffer);
+        }
+        buffer.clear();
+        segment.force(false);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < written.size(); i++) {
+            switch (written.get(i)) {
+                case Append append -> {
+                    Positions positions = index.computeIfAbsent(append.conversationId(),
+                            id -> new Positions(maxMessages));
+                    positions.add(segmentNumber << OFFSET_BITS | offsets.get(i));
+                    positions.touch(now);
+                }
+                case Clear clear -> {
+                    index.remove(clear.conversationId());
+                    clearing.remove(clear.conversationId(), clear);
+                }
+                case Close close -> {
+                }
+            }
+        }
+        flushes.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Drops the conversations not written to within the retention from the index. Runs on
+     * the writer thread, their records go with the next compaction.
+     */
+    private void expire() {
+        lastExpiry = System.nanoTime();
+        long now = System.currentTimeMillis();
+        int before = index.size();
+        index.values().removeIf(positions -> expired(positions, now));
+        if (index.size() < before) {
+            logger.info("Dropped {} expired conversations from the chat memory log", before - index.size());
+        }
+    }
+
+    private boolean expired(Positions positions, long now) {
+        return retention.toMillis() > 0 && now - positions.lastWrite() > retention.toMillis();
+    }
+
+    /**
+     * Rewrites the indexed records of all earlier segments into one compacted segment and
+     * deletes the earlier ones. Runs on the writer thread, appends queue up meanwhile.
+     */
+    private void compact() {
+        expire();
+        segmentsLock.writeLock().lock();
+        try {
+            long target = segmentNumber;
+            segment.close();
+            Path temporary = directory.resolve(segmentPath(target).getFileName() + ".tmp");
+            try (FileChannel compacted = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                var out = ByteBuffer.allocate(256 * 1024);
+                out.putInt(0).put(COMPACTED).putInt(crc(new byte[] { COMPACTED }));
+                long position = out.position();
+                Map<Positions, long[]> replaced = new HashMap<>();
+                for (Map.Entry<String, Positions> entry : index.entrySet()) {
+                    Positions positions = entry.getValue();
+                    byte[] id = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                    ByteBuffer touched = ByteBuffer.allocate(Integer.BYTES + id.length + Long.BYTES)
+                            .putInt(id.length)
+                            .put(id)
+                            .putLong(positions.lastWrite())
+                            .flip();
+                    out = append(compacted, out, TOUCHED, touched);
+                    position += HEADER_SIZE + touched.capacity() + Integer.BYTES;
+                    long[] moved = positions.toArray();
+                    for (int i = 0; i < moved.length; i++) {
+                        ByteBuffer payload = read(moved[i]);
+                        int recordLength = HEADER_SIZE + payload.remaining() + Integer.BYTES;
+                        out = append(compacted, out, ADD, payload);
+                        moved[i] = target << OFFSET_BITS | position;
+                        position += recordLength;
+                    }
+                    replaced.put(positions, moved);
+                }
+                out.flip();
+                while (out.hasRemaining()) {
+                    compacted.write(out);
+                }
+                compacted.force(false);
+                replaced.forEach(Positions::replace);
+            }
+            readers.values().forEach(PersistentChatMemory::closeQuietly);
+            readers.clear();
+            Files.move(temporary, segmentPath(target), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            for (Path path : segments()) {
+                if (segmentNumber(path) < target) {
+                    Files.delete(path);
+                }
+            }
+            closedSegments = 1;
+            openSegment(target + 1);
+            logger.info("Compacted chat memory log of {} conversations", index.size());
+        }
+        catch (IOException | UncheckedIOException e) {
+            logger.error("Chat memory log compaction failed", e);
+            try {
+                openSegment(segmentNumber + 1);
+            }
+            catch (UncheckedIOException reopenFailure) {
+                logger.error("Could not start a new chat memory segment", reopenFailure);
+            }
+        }
+        finally {
+            segmentsLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Puts a record into {@code out}, writing it to the channel first when the record does
+     * not fit.
+     * @return the buffer holding the record, larger than {@code out} for a large record
+     */
+    private static ByteBuffer append(FileChannel channel, ByteBuffer out, byte type, ByteBuffer payload)
+            throws IOException {
+        int recordLength = HEADER_SIZE + payload.remaining() + Integer.BYTES;
+        if (out.remaining() < recordLength) {
+            out.flip();
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            out = ByteBuffer.allocate(Math.max(out.capacity(), recordLength));
+        }
+        var crc = new CRC32C();
+        crc.update(type);
+        crc.update(payload.duplicate());
+        out.putInt(payload.remaining()).put(type).put(payload).putInt((int) crc.getValue());
+        return out;
+    }
+
+    /**
+     * Indexes the existing segments.
+     * @return the number of the last segment, or 0 if there is none
+     */
+    private long scan() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path leftover : files.filter(path -> path.getFileName().toString().endsWith(".tmp")).toList()) {
+                Files.delete(leftover);
+            }
+        }
+        long last = 0;
+        for (Path path : segments()) {
+            long number = segmentNumber(path);
+            last = number;
+            closedSegments++;
+            // Records of a compacted segment are as old as their touched record says
+            long modified = Files.getLastModifiedTime(path).toMillis();
+            boolean compacted = false;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                MappedByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                while (records.remaining() >= HEADER_SIZE) {
+                    int start = records.position();
+                    int payloadLength = records.getInt();
+                    if (payloadLength < 0 || records.remaining() < Byte.BYTES + payloadLength + Integer.BYTES) {
+                        logger.warn("Ignoring torn record at offset {} of {}", start, path);
+                        break;
+                    }
+                    var crc = new CRC32C();
+                    crc.update(records.slice(start + Integer.BYTES, Byte.BYTES + payloadLength));
+                    byte type = records.get();
+                    ByteBuffer payload = records.slice(records.position(), payloadLength);
+                    records.position(records.position() + payloadLength);
+                    if ((int) crc.getValue() != records.getInt()) {
+                        logger.warn("Ignoring corrupt record at offset {} of {}", start, path);
+                        break;
+                    }
+                    switch (type) {
+                        case ADD -> {
+                            Positions positions = index.computeIfAbsent(getString(payload),
+                                    id -> new Positions(maxMessages));
+                            positions.add(number << OFFSET_BITS | start);
+                            if (!compacted) {
+                                positions.touch(modified);
+                            }
+                        }
+                        case CLEAR -> index.remove(getString(payload));
+                        case COMPACTED -> {
+                            index.clear();
+                            closedSegments = 1;
+                            compacted = true;
+                        }
+                        case TOUCHED -> index.computeIfAbsent(getString(payload), id -> new Positions(maxMessages))
+                                .touch(payload.getLong());
+                        default -> logger.warn("Ignoring record of unknown type {} in {}", type, path);
+                    }
+                }
+            }
+        }
+        expire();
+        if (!index.isEmpty()) {
+            logger.info("Found {} conversations in the chat memory log", index.size());
+        }
+        return last;
+    }
+
+    private void openSegment(long number) {
+        try {
+            this.segment = FileChannel.open(segmentPath(number), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            this.segmentNumber = number;
+            this.segmentPosition = 0;
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Path segmentPath(long number) {
+        return directory.resolve("chat-%020d.log".formatted(number));
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> path.getFileName().toString().matches("chat-\\d{20}\\.log"))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static long segmentNumber(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring("chat-".length(), name.length() - ".log".length()));
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int crc(byte[] bytes) {
+        var crc = new CRC32C();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        try {
+            channel.close();
+        }
+        catch (IOException e) {
+            logger.debug("Could not close chat memory segment", e);
+        }
+    }
+
+    /**
+     * Writes every queued change before returning.
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            var close = new Close(new CompletableFuture<>());
+            queue.add(close);
+            close.done().join();
+        }
+    }
+}
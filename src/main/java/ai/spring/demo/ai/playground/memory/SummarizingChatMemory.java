@@ -0,0 +1,254 @@
+package ai.spring.demo.ai.playground.memory;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+
+/**
+ * {@link ChatMemory} decorator folding older messages into a running summary, so that
+ * prompts stop growing with the length of a conversation.
+ * <p>
+ * Once more than {@code keepMessages + foldMessages} messages of a conversation are not
+ * covered by its summary, all but the last {@code keepMessages} are merged into the summary
+ * by the chat model on a background virtual thread. Reads return the summary as an
+ * assistant message followed by every message it does not cover yet, so a lagging summary
+ * never loses context. It is not a system message because {@code PromptChatMemoryAdvisor}
+ * only renders user and assistant messages into the prompt. Text matching one of the pinned patterns, like booking numbers and customer
+ * names, is kept verbatim next to the summary.
+ * <p>
+ * The estimated prompt tokens of the full and the compacted history are recorded by
+ * {@code playground.chat.memory.prompt.tokens} with a {@code history} tag.
+ */
+public class SummarizingChatMemory implements ChatMemory, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SummarizingChatMemory.class);
+
+    private static final int MAX_PINNED = 32;
+
+    private static final String INSTRUCTIONS = """
+            You maintain the running summary of a conversation between a customer and the customer \
+            support agent of the airline Funnair. Merge the new messages into the current summary. \
+            Keep every fact needed to continue the conversation: what the customer asked for, what \
+            was looked up, what was agreed or refused and what is still pending. Be concise and \
+            reply with the updated summary only.
+            """;
+
+    private final ChatMemory delegate;
+
+    private final ChatModel chatModel;
+
+    private final int keepMessages;
+
+    private final int foldMessages;
+
+    private final List<Pattern> pinnedPatterns;
+
+    private final Cache<String, Summary> summaries;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final TokenCountEstimator tokenCountEstimator = new JTokkitTokenCountEstimator();
+
+    private final DistributionSummary fullTokens;
+
+    private final DistributionSummary compactedTokens;
+
+    private final Timer summarizations;
+
+    private final Counter failures;
+
+    private static final class Summary {
+
+        // Guarded by this
+        String text = "";
+        final LinkedHashSet<String> pinned = new LinkedHashSet<>();
+        long added;
+        long summarized;
+        boolean running;
+
+        void pin(String fact) {
+            pinned.remove(fact);
+            pinned.add(fact);
+            if (pinned.size() > MAX_PINNED) {
+                Iterator<String> oldest = pinned.iterator();
+                oldest.next();
+                oldest.remove();
+            }
+        }
+    }
+
+    public SummarizingChatMemory(ChatMemory delegate, ChatModel chatModel, int keepMessages, int foldMessages,
+            List<Pattern> pinnedPatterns, Duration idleTimeout, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.chatModel = chatModel;
+        this.keepMessages = keepMessages;
+        this.foldMessages = foldMessages;
+        this.pinnedPatterns = pinnedPatterns;
+        this.summaries = Caffeine.newBuilder().expireAfterAccess(idleTimeout).build();
+        this.fullTokens = DistributionSummary.builder("playground.chat.memory.prompt.tokens")
+                .description("Estimated tokens of the chat history put into a prompt")
+                .tag("history", "full")
+                .register(meterRegistry);
+        this.compactedTokens = DistributionSummary.builder("playground.chat.memory.prompt.tokens")
+                .description("Estimated tokens of the chat history put into a prompt")
+                .tag("history", "compacted")
+                .register(meterRegistry);
+        this.summarizations = Timer.builder("playground.chat.memory.summarizations")
+                .description("Background summary updates")
+                .register(meterRegistry);
+        this.failures = Counter.builder("playground.chat.memory.summarization.failures").register(meterRegistry);
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        Summary summary = summaries.get(conversationId, id -> new Summary());
+        boolean fold;
+        synchronized (summary) {
+            delegate.add(conversationId, messages);
+            summary.added += messages.size();
+            for (Message message : messages) {
+                pin(summary, message.getContent());
+            }
+            fold = !summary.running && summary.added - summary.summarized > keepMessages + foldMessages;
+            summary.running |= fold;
+        }
+        if (fold) {
+            executor.execute(() -> summarize(conversationId, summary));
+        }
+    }
+
+    @Override
+    public List<Message> get(String conversationId, int lastN) {
+        Summary summary = summaries.getIfPresent(conversationId);
+        List<Message> full = delegate.get(conversationId, lastN);
+        List<Message> compacted = full;
+        if (summary != null) {
+            synchronized (summary) {
+                if (summary.summarized > 0) {
+                    long uncovered = Math.max(keepMessages, summary.added - summary.summarized);
+                    List<Message> recent = full.subList(Math.max(0, full.size() - (int) Math.min(uncovered, lastN)),
+                            full.size());
+                    compacted = new ArrayList<>(recent.size() + 1);
+                    compacted.add(new AssistantMessage(render(summary)));
+                    compacted.addAll(recent);
+                }
+            }
+        }
+        int tokens = estimateTokens(full);
+        fullTokens.record(tokens);
+        compactedTokens.record(compacted == full ? tokens : estimateTokens(compacted));
+        return compacted;
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        summaries.invalidate(conversationId);
+        delegate.clear(conversationId);
+    }
+
+    private void summarize(String conversationId, Summary summary) {
+        try {
+            while (true) {
+                String previous;
+                List<Message> folded;
+                long covered;
+                synchronized (summary) {
+                    long uncovered = summary.added - summary.summarized;
+                    if (uncovered <= keepMessages + foldMessages) {
+                        summary.running = false;
+                        return;
+                    }
+                    previous = summary.text;
+                    List<Message> recent = delegate.get(conversationId, (int) uncovered);
+                    folded = List.copyOf(recent.subList(0, Math.max(0, recent.size() - keepMessages)));
+                    // Messages that fell out of the underlying memory before being folded are skipped
+                    covered = summary.added - keepMessages;
+                }
+                String updated = summarizations.record(() -> chatModel.call(prompt(previous, folded))
+                        .getResult().getOutput().getContent());
+                synchronized (summary) {
+                    summary.text = updated;
+                    summary.summarized = covered;
+                }
+            }
+        }
+        catch (RuntimeException e) {
+            failures.increment();
+            logger.warn("Could not summarize conversation {}", conversationId, e);
+            synchronized (summary) {
+                summary.running = false;
+            }
+        }
+    }
+
+    private static Prompt prompt(String previous, List<Message> messages) {
+        var transcript = new StringBuilder();
+        transcript.append("Current summary:\n").append(previous.isEmpty() ? "(none)" : previous);
+        transcript.append("\n\nNew messages:\n");
+        for (Message message : messages) {
+            transcript.append(message.getMessageType().getValue()).append(": ").append(message.getContent()).append('\n');
+        }
+        return new Prompt(List.of(new SystemMessage(INSTRUCTIONS), new UserMessage(transcript.toString())));
+    }
+
+    private void pin(Summary summary, String content) {
+        if (content == null) {
+            return;
+        }
+        for (Pattern pattern : pinnedPatterns) {
+            Matcher matcher = pattern.matcher(content);
+            while (matcher.find()) {
+                summary.pin(matcher.group());
+            }
+        }
+    }
+
+    private static String render(Summary summary) {
+        var text = new StringBuilder("Summary of the earlier conversation: ").append(summary.text);
+        if (!summary.pinned.isEmpty()) {
+            text.append("\nFacts mentioned verbatim: ").append(String.join("; ", summary.pinned));
+        }
+        return text.toString();
+    }
+
+    private int estimateTokens(List<Message> messages) {
+        int tokens = 0;
+        for (Message message : messages) {
+            if (message.getContent() != null) {
+                tokens += tokenCountEstimator.estimate(message.getContent());
+            }
+        }
+        return tokens;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
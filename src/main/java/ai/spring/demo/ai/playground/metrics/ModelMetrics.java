@@ -0,0 +1,180 @@
+package ai.spring.demo.ai.playground.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
+
+import org.springframework.ai.chat.client.RequestResponseAdvisor;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+/**
+ * Latency and token metrics of the calls to the AI models, tagged by {@code endpoint}.
+ * <p>
+ * Every call is timed by {@code playground.ai.requests} with an {@code outcome} tag. For
+ * streamed answers that is the time until the last chunk, and the time to the first token
+ * and between tokens are recorded by {@code playground.ai.first.token} and
+ * {@code playground.ai.inter.token}. Prompt and completion tokens reported by the model are
+ * recorded by {@code playground.ai.tokens} with a {@code type} tag. Advisors wrapped with
+ * {@link #timed} are timed by {@code playground.ai.advisor}.
+ * <p>
+ * The meters of an endpoint are registered once and reused, as streams record every chunk.
+ */
+@Component
+public class ModelMetrics {
+
+    private final MeterRegistry meterRegistry;
+
+    private final Map<String, EndpointMeters> endpoints = new ConcurrentHashMap<>();
+
+    private record EndpointMeters(Timer success, Timer error, Timer cancelled, Timer firstToken, Timer interToken,
+            DistributionSummary promptTokens, DistributionSummary completionTokens) {
+    }
+
+    /**
+     * State of one subscription to a streamed answer.
+     */
+    private static final class Stream {
+
+        final long start = System.nanoTime();
+        long last;
+        @Nullable
+        Usage usage;
+    }
+
+    public ModelMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Times a blocking call.
+     */
+    public <T> T call(String endpoint, Supplier<T> call) {
+        EndpointMeters meters = meters(endpoint);
+        long start = System.nanoTime();
+        try {
+            T result = call.get();
+            meters.success().record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return result;
+        }
+        catch (RuntimeException | Error e) {
+            meters.error().record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the content of a streamed answer, timing each subscription to it.
+     */
+    public Flux<String> stream(String endpoint, Flux<ChatResponse> responses) {
+        EndpointMeters meters = meters(endpoint);
+        return Flux.defer(() -> {
+            var stream = new Stream();
+            return responses
+                    .doOnNext(response -> {
+                        Usage usage = usage(response);
+                        if (usage != null) {
+                            stream.usage = usage;
+                        }
+                    })
+                    .map(ModelMetrics::content)
+                    .filter(StringUtils::hasLength)
+                    .doOnNext(content -> {
+                        long now = System.nanoTime();
+                        if (stream.last == 0) {
+                            meters.firstToken().record(now - stream.start, TimeUnit.NANOSECONDS);
+                        }
+                        else {
+                            meters.interToken().record(now - stream.last, TimeUnit.NANOSECONDS);
+                        }
+                        stream.last = now;
+                    })
+                    .doFinally(signal -> {
+                        Timer timer = signal == SignalType.ON_COMPLETE ? meters.success()
+                                : signal == SignalType.ON_ERROR ? meters.error() : meters.cancelled();
+                        timer.record(System.nanoTime() - stream.start, TimeUnit.NANOSECONDS);
+                        record(meters, stream.usage);
+                    });
+        });
+    }
+
+    /**
+     * Records the tokens used by a blocking call.
+     */
+    public void recordUsage(String endpoint, ChatResponse response) {
+        record(meters(endpoint), usage(response));
+    }
+
+    /**
+     * Wraps an advisor to time it.
+     */
+    public RequestResponseAdvisor timed(String advisor, RequestResponseAdvisor delegate) {
+        return new TimedAdvisor(advisor, delegate, meterRegistry);
+    }
+
+    private static void record(EndpointMeters meters, @Nullable Usage usage) {
+        if (usage == null) {
+            return;
+        }
+        // Streams only report usage when the provider sends it, 0 otherwise
+        if (usage.getPromptTokens() != null && usage.getPromptTokens() > 0) {
+            meters.promptTokens().record(usage.getPromptTokens());
+        }
+        if (usage.getGenerationTokens() != null && usage.getGenerationTokens() > 0) {
+            meters.completionTokens().record(usage.getGenerationTokens());
+        }
+    }
+
+    @Nullable
+    private static Usage usage(ChatResponse response) {
+        return response.getMetadata() != null ? response.getMetadata().getUsage() : null;
+    }
+
+    // Same as the content of ChatClient streams, empty rather than null for Reactor
+    private static String content(ChatResponse response) {
+        String content = response.getResult() != null && response.getResult().getOutput() != null
+                ? response.getResult().getOutput().getContent() : null;
+        return content != null ? content : "";
+    }
+
+    private EndpointMeters meters(String endpoint) {
+        return endpoints.computeIfAbsent(endpoint, e -> new EndpointMeters(
+                requests(e, "success"), requests(e, "error"), requests(e, "cancelled"),
+                Timer.builder("playground.ai.first.token")
+                        .description("Time from the request to the first streamed token")
+                        .tag("endpoint", e)
+                        .register(meterRegistry),
+                Timer.builder("playground.ai.inter.token")
+                        .description("Time between streamed tokens")
+                        .tag("endpoint", e)
+                        .register(meterRegistry),
+                tokens(e, "prompt"), tokens(e, "completion")));
+    }
+
+    private Timer requests(String endpoint, String outcome) {
+        return Timer.builder("playground.ai.requests")
+                .description("Calls to the AI models")
+                .tag("endpoint", endpoint)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private DistributionSummary tokens(String endpoint, String type) {
+        return DistributionSummary.builder("playground.ai.tokens")
+                .description("Tokens used per call")
+                .baseUnit("tokens")
+                .tag("endpoint", endpoint)
+                .tag("type", type)
+                .register(meterRegistry);
+    }
+}
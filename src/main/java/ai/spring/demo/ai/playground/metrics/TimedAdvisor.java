@@ -0,0 +1,67 @@
+package ai.spring.demo.ai.playground.metrics;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Flux;
+
+import org.springframework.ai.chat.client.AdvisedRequest;
+import org.springframework.ai.chat.client.RequestResponseAdvisor;
+import org.springframework.ai.chat.model.ChatResponse;
+
+/**
+ * Advisor timing the request and response phases of another advisor in
+ * {@code playground.ai.advisor}, tagged by {@code advisor} and {@code phase}.
+ * <p>
+ * The response phase of a stream is timed from the end of the stream reaching the advisor
+ * until the advisor completes it, which is when advisors like the chat memory do their
+ * work on the aggregated answer.
+ */
+class TimedAdvisor implements RequestResponseAdvisor {
+
+    private final RequestResponseAdvisor delegate;
+
+    private final Timer request;
+
+    private final Timer response;
+
+    TimedAdvisor(String advisor, RequestResponseAdvisor delegate, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.request = timer(advisor, "request", meterRegistry);
+        this.response = timer(advisor, "response", meterRegistry);
+    }
+
+    private static Timer timer(String advisor, String phase, MeterRegistry meterRegistry) {
+        return Timer.builder("playground.ai.advisor")
+                .description("Time spent in chat client advisors")
+                .tag("advisor", advisor)
+                .tag("phase", phase)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public AdvisedRequest adviseRequest(AdvisedRequest advisedRequest, Map<String, Object> context) {
+        return request.record(() -> delegate.adviseRequest(advisedRequest, context));
+    }
+
+    @Override
+    public ChatResponse adviseResponse(ChatResponse chatResponse, Map<String, Object> context) {
+        return response.record(() -> delegate.adviseResponse(chatResponse, context));
+    }
+
+    @Override
+    public Flux<ChatResponse> adviseResponse(Flux<ChatResponse> fluxResponse, Map<String, Object> context) {
+        // Per chunk, the work done by the advisor is too small to time on its own
+        return Flux.defer(() -> {
+            long[] upstreamComplete = { 0 };
+            return delegate.adviseResponse(fluxResponse.doOnComplete(() -> upstreamComplete[0] = System.nanoTime()),
+                    context).doOnComplete(() -> {
+                        if (upstreamComplete[0] != 0) {
+                            response.record(System.nanoTime() - upstreamComplete[0], TimeUnit.NANOSECONDS);
+                        }
+                    });
+        });
+    }
+}
@@ -0,0 +1,168 @@
+package ai.spring.demo.ai.playground.services;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import ai.spring.demo.ai.playground.data.Booking;
+import ai.spring.demo.ai.playground.data.BookingClass;
+import ai.spring.demo.ai.playground.data.BookingData;
+import ai.spring.demo.ai.playground.data.BookingStatus;
+import ai.spring.demo.ai.playground.data.Customer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Synthetic booking data for load and capacity testing, replacing the 10 demo bookings
+ * when {@code playground.booking.generator.enabled=true}.
+ * <p>
+ * Customers and routes are drawn from Zipf distributions, so a few frequent flyers and
+ * busy routes dominate like in production. The data set is built in parallel chunks, each
+ * with its own random generator split off a seeded root in chunk order, so the same seed
+ * always produces the same data set regardless of the number of cores.
+ */
+@Component
+@ConditionalOnProperty(name = "playground.booking.generator.enabled", havingValue = "true")
+public class BookingGenerator {
+
+    private static final Logger logger = LoggerFactory.getLogger(BookingGenerator.class);
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final int bookings;
+    private final int customers;
+    private final long seed;
+    private final double customerSkew;
+    private final double routeSkew;
+
+    public BookingGenerator(
+            @Value("${playground.booking.generator.bookings:10000000}") int bookings,
+            @Value("${playground.booking.generator.customers:1000000}") int customers,
+            @Value("${playground.booking.generator.seed:42}") long seed,
+            @Value("${playground.booking.generator.customer-skew:1.1}") double customerSkew,
+            @Value("${playground.booking.generator.route-skew:1.0}") double routeSkew) {
+        this.bookings = bookings;
+        this.customers = customers;
+        this.seed = seed;
+        this.customerSkew = customerSkew;
+        this.routeSkew = routeSkew;
+    }
+
+    public int getBookings() {
+        return bookings;
+    }
+
+    public void generate(BookingData db) {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        long heapBefore = memory.getHeapMemoryUsage().getUsed();
+        long start = System.nanoTime();
+
+        List<String> firstNames = new ArrayList<>();
+        List<String> lastNames = new ArrayList<>();
+        for (var names : List.of(FlightBookingService.INDIAN_MALE_FIRST_NAMES, FlightBookingService.INDIAN_FEMALE_FIRST_NAMES,
+                FlightBookingService.MALAY_MALE_FIRST_NAMES, FlightBookingService.MALAY_FEMALE_FIRST_NAMES,
+                FlightBookingService.CHINESE_MALE_FIRST_NAMES, FlightBookingService.CHINESE_FEMALE_FIRST_NAMES,
+                FlightBookingService.FOREIGN_MALE_FIRST_NAMES, FlightBookingService.FOREIGN_FEMALE_FIRST_NAMES)) {
+            firstNames.addAll(names);
+        }
+        for (var names : List.of(FlightBookingService.INDIAN_LAST_NAMES, FlightBookingService.MALAY_LAST_NAMES,
+                FlightBookingService.CHINESE_LAST_NAMES, FlightBookingService.FOREIGN_LAST_NAMES)) {
+            lastNames.addAll(names);
+        }
+
+        // Customer i gets the i-th first/last name combination, numbered once they run out
+        int combinations = firstNames.size() * lastNames.size();
+        var customerTable = new Customer[customers];
+        IntStream.range(0, customers).parallel().forEach(i -> {
+            String lastName = lastNames.get((i / firstNames.size()) % lastNames.size());
+            customerTable[i] = new Customer(firstNames.get(i % firstNames.size()),
+                    i < combinations ? lastName : lastName + "-" + (i / combinations));
+        });
+
+        // Routes are all ordered airport pairs
+        List<String> airports = FlightBookingService.AIRPORT_CODES;
+        int routes = airports.size() * (airports.size() - 1);
+
+        double[] customerCdf = zipfCdf(customers, customerSkew);
+        double[] routeCdf = zipfCdf(routes, routeSkew);
+        BookingClass[] classes = BookingClass.values();
+        LocalDate today = LocalDate.now();
+
+        int chunks = (bookings + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        var root = new SplittableRandom(seed);
+        var randoms = new SplittableRandom[chunks];
+        for (int c = 0; c < chunks; c++) {
+            randoms[c] = root.split();
+        }
+
+        var bookingTable = new Booking[bookings];
+        IntStream.range(0, chunks).parallel().forEach(c -> {
+            SplittableRandom random = randoms[c];
+            int end = Math.min(bookings, (c + 1) * CHUNK_SIZE);
+            for (int i = c * CHUNK_SIZE; i < end; i++) {
+                Customer customer = customerTable[sample(customerCdf, random)];
+                int route = sample(routeCdf, random);
+                int fromIndex = route / (airports.size() - 1);
+                int toIndex = route % (airports.size() - 1);
+                if (toIndex >= fromIndex) {
+                    toIndex++;
+                }
+                BookingStatus status = random.nextInt(20) == 0 ? BookingStatus.CANCELLED : BookingStatus.CONFIRMED;
+                bookingTable[i] = new Booking("FUN-" + (i + 1), today.plusDays(random.nextInt(365)), customer, status,
+                        airports.get(fromIndex), airports.get(toIndex), classes[random.nextInt(classes.length)]);
+            }
+        });
+        long generated = System.nanoTime();
+
+        db.setCustomers(Arrays.asList(customerTable));
+        db.setBookings(Arrays.asList(bookingTable));
+        long loaded = System.nanoTime();
+
+        System.gc();
+        long heapAfter = memory.getHeapMemoryUsage().getUsed();
+        long retained = heapAfter - heapBefore;
+        logger.info("Generated {} bookings for {} customers (seed {}) in {} ms ({} bookings/s), indexed in {} ms",
+                bookings, customers, seed, TimeUnit.NANOSECONDS.toMillis(generated - start),
+                rate(bookings, generated - start), TimeUnit.NANOSECONDS.toMillis(loaded - generated));
+        logger.info("Booking table retains {} MB of heap (~{} bytes per booking), heap used {} MB of {} MB max",
+                retained >> 20, bookings == 0 ? 0 : retained / bookings, heapAfter >> 20,
+                memory.getHeapMemoryUsage().getMax() >> 20);
+    }
+
+    /**
+     * Cumulative distribution of a Zipf distribution over {@code n} ranks. An exponent of
+     * {@code 0} gives a uniform distribution.
+     */
+    private static double[] zipfCdf(int n, double exponent) {
+        double[] cdf = new double[n];
+        double sum = 0;
+        for (int rank = 0; rank < n; rank++) {
+            sum += 1.0 / Math.pow(rank + 1, exponent);
+            cdf[rank] = sum;
+        }
+        for (int rank = 0; rank < n; rank++) {
+            cdf[rank] /= sum;
+        }
+        return cdf;
+    }
+
+    private static int sample(double[] cdf, SplittableRandom random) {
+        int index = Arrays.binarySearch(cdf, random.nextDouble());
+        return Math.min(index < 0 ? -index - 1 : index, cdf.length - 1);
+    }
+
+    private static long rate(long count, long nanos) {
+        return nanos == 0 ? 0 : count * TimeUnit.SECONDS.toNanos(1) / nanos;
+    }
+}
@@ -1,5 +1,6 @@
 package ai.spring.demo.ai.playground.services;
 
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.function.Function;
 
@@ -10,6 +11,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Description;
@@ -23,6 +25,18 @@ public class BookingTools {
     @Autowired
     private FlightBookingService flightBookingService;
 
+    @Autowired
+    private ToolExecutor toolExecutor;
+
+    @Value("${playground.tools.timeout.get-booking-details:5s}")
+    private Duration getBookingDetailsTimeout;
+
+    @Value("${playground.tools.timeout.change-booking:10s}")
+    private Duration changeBookingTimeout;
+
+    @Value("${playground.tools.timeout.cancel-booking:10s}")
+    private Duration cancelBookingTimeout;
+
     public record BookingDetailsRequest(String bookingNumber, String firstName, String lastName) {
     }
 
@@ -47,10 +61,12 @@ public class BookingTools {
     @Bean
     @Description("Get booking details")
     public Function<BookingDetailsRequest, BookingDetails> getBookingDetails() {
+        Function<BookingDetailsRequest, BookingDetails> lookup = toolExecutor.bounded("getBookingDetails",
+                getBookingDetailsTimeout, request -> flightBookingService.getBookingDetails(request.bookingNumber(),
+                        request.firstName(), request.lastName()));
         return request -> {
             try {
-                return flightBookingService.getBookingDetails(request.bookingNumber(), request.firstName(),
-                        request.lastName());
+                return lookup.apply(request);
             }
             catch (Exception e) {
                 logger.warn("Booking details: {}", NestedExceptionUtils.getMostSpecificCause(e).getMessage());
@@ -63,19 +79,22 @@ public class BookingTools {
     @Bean
     @Description("Change booking dates")
     public Function<ChangeBookingDatesRequest, String> changeBooking() {
-        return request -> {
-            flightBookingService.changeBooking(request.bookingNumber(), request.firstName(), request.lastName(),
-                    request.date(), request.from(), request.to());
-            return "";
-        };
+        return toolExecutor.orderedByBooking("changeBooking", changeBookingTimeout,
+                ChangeBookingDatesRequest::bookingNumber, request -> {
+                    flightBookingService.changeBooking(request.bookingNumber(), request.firstName(),
+                            request.lastName(), request.date(), request.from(), request.to());
+                    return "";
+                });
     }
 
     @Bean
     @Description("Cancel booking")
     public Function<CancelBookingRequest, String> cancelBooking() {
-        return request -> {
-            flightBookingService.cancelBooking(request.bookingNumber(), request.firstName(), request.lastName());
-            return "";
-        };
+        return toolExecutor.orderedByBooking("cancelBooking", cancelBookingTimeout,
+                CancelBookingRequest::bookingNumber, request -> {
+                    flightBookingService.cancelBooking(request.bookingNumber(), request.firstName(),
+                            request.lastName());
+                    return "";
+                });
     }
 }
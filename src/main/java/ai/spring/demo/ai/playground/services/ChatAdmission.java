@@ -0,0 +1,356 @@
+package ai.spring.demo.ai.playground.services;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import com.vaadin.hilla.exception.EndpointException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+/**
+ * Admission control for the support chat, protecting the model provider from load spikes.
+ * <p>
+ * A chat turn runs when fewer than {@code maxConcurrent} turns are running, fewer than
+ * {@code maxPerChat} of its own conversation are running, and the token bucket holds a
+ * token. The bucket is refilled with {@code rate} tokens per second up to {@code burst},
+ * which should be tuned to the provider's request quota. Other turns wait in arrival
+ * order; a turn blocked by its conversation does not hold up turns of other
+ * conversations. When the queue, or the conversation's share of it, is full, a turn is
+ * rejected right away, and a turn still waiting after {@code maxWait} is rejected then,
+ * so that waits stay bounded instead of piling up.
+ * <p>
+ * The queue depth and running turns are exported as {@code playground.chat.admission.queued}
+ * and {@code playground.chat.admission.active}, the waits by
+ * {@code playground.chat.admission.wait} and rejections by
+ * {@code playground.chat.admission.rejected} with a {@code reason} tag.
+ */
+@Component
+public class ChatAdmission implements AutoCloseable {
+
+    private final int maxConcurrent;
+
+    private final int maxPerChat;
+
+    private final int maxQueued;
+
+    private final Duration maxWait;
+
+    private final double rate;
+
+    private final double burst;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Guarded by the lock
+    private final ArrayDeque<Waiter> queue = new ArrayDeque<>();
+
+    private final Map<String, ChatState> chats = new HashMap<>();
+
+    private double tokens;
+
+    private long refilledAt = System.nanoTime();
+
+    private boolean refillScheduled;
+
+    // Mirrors of the guarded state for the gauges
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("chat-admission").daemon().factory());
+
+    // Admitted turns start on their own thread, not on the one releasing a slot or refilling
+    // the bucket, as starting a turn runs the synchronous advisors
+    private final ExecutorService starter = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("chat-turn-", 0).factory());
+
+    private final Timer waits;
+
+    private final Counter queueFull;
+
+    private final Counter chatBusy;
+
+    private final Counter timedOut;
+
+    private static final class ChatState {
+
+        int running;
+        int waiting;
+    }
+
+    private static final class Waiter {
+
+        final String chatId;
+        final MonoSink<Permit> sink;
+        final long enqueuedAt = System.nanoTime();
+        @Nullable
+        ScheduledFuture<?> timeout;
+
+        Waiter(String chatId, MonoSink<Permit> sink) {
+            this.chatId = chatId;
+            this.sink = sink;
+        }
+    }
+
+    /**
+     * A running turn, released once when it completes, fails or is cancelled.
+     */
+    private final class Permit {
+
+        final String chatId;
+        final AtomicBoolean released = new AtomicBoolean();
+
+        Permit(String chatId) {
+            this.chatId = chatId;
+        }
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                ChatAdmission.this.release(chatId);
+            }
+        }
+    }
+
+    public ChatAdmission(MeterRegistry meterRegistry,
+            @Value("${playground.chat.admission.max-concurrent:32}") int maxConcurrent,
+            @Value("${playground.chat.admission.max-per-chat:1}") int maxPerChat,
+            @Value("${playground.chat.admission.max-queued:64}") int maxQueued,
+            @Value("${playground.chat.admission.max-wait:15s}") Duration maxWait,
+            @Value("${playground.chat.admission.rate:10}") double rate,
+            @Value("${playground.chat.admission.burst:20}") double burst) {
+        this.maxConcurrent = maxConcurrent;
+        this.maxPerChat = maxPerChat;
+        this.maxQueued = maxQueued;
+        this.maxWait = maxWait;
+        this.rate = rate;
+        this.burst = Math.max(1, burst);
+        this.tokens = this.burst;
+        Gauge.builder("playground.chat.admission.queued", queued, AtomicInteger::get)
+                .description("Chat turns waiting to be admitted")
+                .register(meterRegistry);
+        Gauge.builder("playground.chat.admission.active", active, AtomicInteger::get)
+                .description("Chat turns running")
+                .register(meterRegistry);
+        this.waits = Timer.builder("playground.chat.admission.wait")
+                .description("Time chat turns waited to be admitted")
+                .register(meterRegistry);
+        this.queueFull = rejected("queue-full", meterRegistry);
+        this.chatBusy = rejected("chat-busy", meterRegistry);
+        this.timedOut = rejected("timeout", meterRegistry);
+    }
+
+    private static Counter rejected(String reason, MeterRegistry meterRegistry) {
+        return Counter.builder("playground.chat.admission.rejected")
+                .description("Chat turns rejected by admission control")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs the turn returned by {@code chat} once it is admitted, keeping its slot until the
+     * stream terminates or is cancelled.
+     */
+    public <T> Flux<T> admit(String chatId, Supplier<Flux<T>> chat) {
+        return Mono.<Permit>create(sink -> enqueue(new Waiter(chatId, sink)))
+                // Admitted just as the caller went away
+                .doOnDiscard(Permit.class, Permit::release)
+                .flatMapMany(permit -> Flux.defer(chat).doFinally(signal -> permit.release()));
+    }
+
+    private void enqueue(Waiter waiter) {
+        Counter rejected = null;
+        lock.lock();
+        try {
+            ChatState chat = chats.computeIfAbsent(waiter.chatId, id -> new ChatState());
+            if (queue.size() >= maxQueued) {
+                rejected = queueFull;
+                removeIfIdle(waiter.chatId);
+            }
+            else if (chat.waiting >= maxPerChat) {
+                rejected = chatBusy;
+                removeIfIdle(waiter.chatId);
+            }
+            else {
+                chat.waiting++;
+                queue.addLast(waiter);
+                queued.set(queue.size());
+                waiter.timeout = scheduler.schedule(() -> expire(waiter), maxWait.toNanos(), TimeUnit.NANOSECONDS);
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+        if (rejected != null) {
+            reject(waiter, rejected);
+            return;
+        }
+        waiter.sink.onCancel(() -> cancel(waiter));
+        dispatch();
+    }
+
+    private void reject(Waiter waiter, Counter reason) {
+        reason.increment();
+        waiter.sink.error(new EndpointException(reason == chatBusy
+                ? "Please wait for the answer to your previous message."
+                : "The assistant is busy, please try again in a moment."));
+    }
+
+    private void expire(Waiter waiter) {
+        lock.lock();
+        try {
+            if (!dequeue(waiter)) {
+                return;
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+        reject(waiter, timedOut);
+    }
+
+    private void cancel(Waiter waiter) {
+        lock.lock();
+        try {
+            dequeue(waiter);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    // Called with the lock held
+    private boolean dequeue(Waiter waiter) {
+        if (!queue.remove(waiter)) {
+            return false;
+        }
+        queued.set(queue.size());
+        chats.get(waiter.chatId).waiting--;
+        removeIfIdle(waiter.chatId);
+        return true;
+    }
+
+    // Called with the lock held
+    private void removeIfIdle(String chatId) {
+        ChatState chat = chats.get(chatId);
+        if (chat != null && chat.running == 0 && chat.waiting == 0) {
+            chats.remove(chatId);
+        }
+    }
+
+    private void release(String chatId) {
+        lock.lock();
+        try {
+            chats.get(chatId).running--;
+            removeIfIdle(chatId);
+            active.decrementAndGet();
+        }
+        finally {
+            lock.unlock();
+        }
+        dispatch();
+    }
+
+    /**
+     * Admits the waiting turns in arrival order, as far as the limits allow.
+     */
+    private void dispatch() {
+        List<Waiter> admitted = new ArrayList<>();
+        lock.lock();
+        try {
+            Iterator<Waiter> waiting = queue.iterator();
+            while (waiting.hasNext() && active.get() < maxConcurrent) {
+                Waiter waiter = waiting.next();
+                ChatState chat = chats.get(waiter.chatId);
+                if (chat.running >= maxPerChat) {
+                    continue;
+                }
+                if (!takeToken()) {
+                    break;
+                }
+                waiting.remove();
+                chat.waiting--;
+                chat.running++;
+                active.incrementAndGet();
+                admitted.add(waiter);
+            }
+            queued.set(queue.size());
+        }
+        finally {
+            lock.unlock();
+        }
+        for (Waiter waiter : admitted) {
+            if (waiter.timeout != null) {
+                waiter.timeout.cancel(false);
+            }
+            waits.record(System.nanoTime() - waiter.enqueuedAt, TimeUnit.NANOSECONDS);
+            var permit = new Permit(waiter.chatId);
+            try {
+                starter.execute(() -> waiter.sink.success(permit));
+            }
+            catch (RejectedExecutionException e) {
+                // Closed
+                permit.release();
+            }
+        }
+    }
+
+    // Called with the lock held
+    private boolean takeToken() {
+        if (rate <= 0) {
+            return true;
+        }
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - refilledAt) * rate / 1e9);
+        refilledAt = now;
+        if (tokens >= 1) {
+            tokens--;
+            return true;
+        }
+        if (!refillScheduled) {
+            refillScheduled = true;
+            long delay = (long) Math.ceil((1 - tokens) / rate * 1e9);
+            scheduler.schedule(() -> {
+                lock.lock();
+                try {
+                    refillScheduled = false;
+                }
+                finally {
+                    lock.unlock();
+                }
+                dispatch();
+            }, delay, TimeUnit.NANOSECONDS);
+        }
+        return false;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        starter.shutdown();
+    }
+}
@@ -18,14 +18,13 @@ package ai.spring.demo.ai.playground.services;
 
 import java.time.LocalDate;
 
+import ai.spring.demo.ai.playground.cache.ConversationRetrievalAdvisor;
+import ai.spring.demo.ai.playground.metrics.ModelMetrics;
 import reactor.core.publisher.Flux;
 
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.client.advisor.PromptChatMemoryAdvisor;
-import org.springframework.ai.chat.client.advisor.QuestionAnswerAdvisor;
 import org.springframework.ai.chat.memory.ChatMemory;
-import org.springframework.ai.vectorstore.SearchRequest;
-import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.stereotype.Service;
 
 import static org.springframework.ai.chat.client.advisor.AbstractChatMemoryAdvisor.CHAT_MEMORY_CONVERSATION_ID_KEY;
@@ -39,7 +38,12 @@ public class CustomerSupportAssistant {
 
 	private final ChatClient chatClient;
 
-	public CustomerSupportAssistant(ChatClient.Builder modelBuilder, VectorStore vectorStore, ChatMemory chatMemory) {
+	private final ModelMetrics modelMetrics;
+
+	public CustomerSupportAssistant(ChatClient.Builder modelBuilder, ConversationRetrievalAdvisor retrievalAdvisor,
+			ChatMemory chatMemory, TracingAdvisor tracingAdvisor, ModelMetrics modelMetrics) {
+
+		this.modelMetrics = modelMetrics;
 
 		// @formatter:off
 		this.chatClient = modelBuilder
@@ -62,14 +66,14 @@ public class CustomerSupportAssistant {
 						Today is {current_date}.
 					""")
 				.defaultAdvisors(
-						new PromptChatMemoryAdvisor(chatMemory), // Chat Memory
+						modelMetrics.timed("memory", new PromptChatMemoryAdvisor(chatMemory)), // Chat Memory
 						// new VectorStoreChatMemoryAdvisor(vectorStore)),
 					
-						new QuestionAnswerAdvisor(vectorStore, SearchRequest.defaults()), // RAG
+						modelMetrics.timed("retrieval", retrievalAdvisor), // RAG, reusing the documents of similar follow-up questions
 						// new QuestionAnswerAdvisor(vectorStore, SearchRequest.defaults()
 						// 	.withFilterExpression("'documentType' == 'terms-of-service' && region in ['EU', 'US']")),
 						
-						new LoggingAdvisor())
+						modelMetrics.timed("tracing", tracingAdvisor))
 						
 				.defaultFunctions("getBookingDetails", "changeBooking", "cancelBooking") // FUNCTION CALLING
 
@@ -79,12 +83,12 @@ public class CustomerSupportAssistant {
 
 	public Flux<String> chat(String chatId, String userMessageContent) {
 
-		return this.chatClient.prompt()
+		return this.modelMetrics.stream("assistant", this.chatClient.prompt()
 				.system(s -> s.param("current_date", LocalDate.now().toString()))
 				.user(userMessageContent)
 				.advisors(a -> a
 						.param(CHAT_MEMORY_CONVERSATION_ID_KEY, chatId)
 						.param(CHAT_MEMORY_RETRIEVE_SIZE_KEY, 100))
-				.stream().content();
+				.stream().chatResponse());
 	}
 }
\ No newline at end of file
@@ -3,6 +3,12 @@ package ai.spring.demo.ai.playground.services;
 import ai.spring.demo.ai.playground.data.*;
 import ai.spring.demo.ai.playground.services.BookingTools.BookingDetails;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDate;
@@ -13,41 +19,75 @@ import java.util.Random;
 @Service
 public class FlightBookingService {
 
+    // Indian names (Male and Female)
+    static final List<String> INDIAN_MALE_FIRST_NAMES = List.of("Raj", "Arjun", "Vijay", "Manoj", "Kumar");
+    static final List<String> INDIAN_FEMALE_FIRST_NAMES = List.of("Priya", "Anjali", "Latha", "Deepa", "Radha");
+    static final List<String> INDIAN_LAST_NAMES = List.of("Menon", "Ravi", "Krishnan", "Pillai", "Iyer");
+
+    // Malay names (Male and Female)
+    static final List<String> MALAY_MALE_FIRST_NAMES = List.of("Ahmad", "Mohd", "Zainal", "Azman", "Rosli");
+    static final List<String> MALAY_FEMALE_FIRST_NAMES = List.of("Siti", "Aisyah", "Nurul", "Fatimah", "Zarina");
+    static final List<String> MALAY_LAST_NAMES = List.of("Ismail", "Rahman", "Hassan", "Abdullah", "Yusof");
+
+    // Chinese names (Male and Female)
+    static final List<String> CHINESE_MALE_FIRST_NAMES = List.of("Wei", "Yong", "Liang", "Jun", "Feng");
+    static final List<String> CHINESE_FEMALE_FIRST_NAMES = List.of("Mei", "Fang", "Xiu", "Ling", "Hua");
+    static final List<String> CHINESE_LAST_NAMES = List.of("Lim", "Tan", "Wong", "Lee", "Chong");
+
+    // Foreign names (Male and Female)
+    static final List<String> FOREIGN_MALE_FIRST_NAMES = List.of("John", "Michael", "Robert", "James", "David");
+    static final List<String> FOREIGN_FEMALE_FIRST_NAMES = List.of("Jane", "Sarah", "Emily", "Anna", "Laura");
+    static final List<String> FOREIGN_LAST_NAMES = List.of("Doe", "Smith", "Johnson", "Williams", "Taylor");
+
+    // Domestic Malaysian airport codes
+    static final List<String> AIRPORT_CODES = List.of(
+            "KUL", "SZB", "PEN", "JHB", "LGK", "BKI", "KCH", "TGG", "KUA", "AOR",
+            "SDK", "LDU", "MYY", "BTU", "TWU"
+    );
+
     private final BookingData db;
 
-    public FlightBookingService() {
-        db = new BookingData();
+    // Tool reads by normalized booking number, dropped whenever the booking changes
+    private final Cache<String, BookingDetails> bookingDetails;
+
+    public FlightBookingService(ObjectProvider<BookingStore> bookingStore, ObjectProvider<BookingGenerator> bookingGenerator,
+            MeterRegistry meterRegistry, @Value("${playground.tools.memo.maximum-size:10000}") long memoSize) {
+        BookingGenerator generator = bookingGenerator.getIfAvailable();
+        db = generator != null ? new BookingData(generator.getBookings()) : new BookingData();
+
+        // Restore the persisted bookings, or seed the data on the first start
+        BookingStore store = bookingStore.getIfAvailable();
+        if (store == null || !store.recover(db)) {
+            if (generator != null) {
+                generator.generate(db);
+            }
+            else {
+                initDemoData();
+            }
+        }
+
+        bookingDetails = CaffeineCacheMetrics.monitor(meterRegistry,
+                Caffeine.newBuilder().maximumSize(memoSize).recordStats().<String, BookingDetails>build(),
+                "booking-details");
+        // Covers changes from any conversation, as well as from the booking UI. Registered
+        // before the store, so that the memo is invalidated even when journaling fails
+        db.addListener(new BookingListener() {
+            @Override
+            public void bookingChanged(Booking booking) {
+                bookingDetails.invalidate(BookingData.normalize(booking.getBookingNumber()));
+            }
 
-        initDemoData();
+            @Override
+            public void bookingRemoved(Booking booking) {
+                bookingDetails.invalidate(BookingData.normalize(booking.getBookingNumber()));
+            }
+        });
+        if (store != null) {
+            store.attach(db);
+        }
     }
 
     private void initDemoData() {
-        // Indian names (Male and Female)
-        List<String> indianMaleFirstNames = List.of("Raj", "Arjun", "Vijay", "Manoj", "Kumar");
-        List<String> indianFemaleFirstNames = List.of("Priya", "Anjali", "Latha", "Deepa", "Radha");
-        List<String> indianLastNames = List.of("Menon", "Ravi", "Krishnan", "Pillai", "Iyer");
-
-        // Malay names (Male and Female)
-        List<String> malayMaleFirstNames = List.of("Ahmad", "Mohd", "Zainal", "Azman", "Rosli");
-        List<String> malayFemaleFirstNames = List.of("Siti", "Aisyah", "Nurul", "Fatimah", "Zarina");
-        List<String> malayLastNames = List.of("Ismail", "Rahman", "Hassan", "Abdullah", "Yusof");
-
-        // Chinese names (Male and Female)
-        List<String> chineseMaleFirstNames = List.of("Wei", "Yong", "Liang", "Jun", "Feng");
-        List<String> chineseFemaleFirstNames = List.of("Mei", "Fang", "Xiu", "Ling", "Hua");
-        List<String> chineseLastNames = List.of("Lim", "Tan", "Wong", "Lee", "Chong");
-
-        // Foreign names (Male and Female)
-        List<String> foreignMaleFirstNames = List.of("John", "Michael", "Robert", "James", "David");
-        List<String> foreignFemaleFirstNames = List.of("Jane", "Sarah", "Emily", "Anna", "Laura");
-        List<String> foreignLastNames = List.of("Doe", "Smith", "Johnson", "Williams", "Taylor");
-
-        // Domestic Malaysian airport codes
-        List<String> airportCodes = List.of(
-                "KUL", "SZB", "PEN", "JHB", "LGK", "BKI", "KCH", "TGG", "KUA", "AOR",
-                "SDK", "LDU", "MYY", "BTU", "TWU"
-        );
-
         Random random = new Random();
 
         var customers = new ArrayList<Customer>();
@@ -59,53 +99,49 @@ public class FlightBookingService {
 
             if (i % 4 == 0) { // Indian Names
                 if (i % 2 == 0) {
-                    firstName = indianMaleFirstNames.get(random.nextInt(indianMaleFirstNames.size()));
+                    firstName = INDIAN_MALE_FIRST_NAMES.get(random.nextInt(INDIAN_MALE_FIRST_NAMES.size()));
                 } else {
-                    firstName = indianFemaleFirstNames.get(random.nextInt(indianFemaleFirstNames.size()));
+                    firstName = INDIAN_FEMALE_FIRST_NAMES.get(random.nextInt(INDIAN_FEMALE_FIRST_NAMES.size()));
                 }
-                lastName = indianLastNames.get(random.nextInt(indianLastNames.size()));
+                lastName = INDIAN_LAST_NAMES.get(random.nextInt(INDIAN_LAST_NAMES.size()));
             } else if (i % 4 == 1) { // Malay Names
                 if (i % 2 == 0) {
-                    firstName = malayMaleFirstNames.get(random.nextInt(malayMaleFirstNames.size()));
+                    firstName = MALAY_MALE_FIRST_NAMES.get(random.nextInt(MALAY_MALE_FIRST_NAMES.size()));
                 } else {
-                    firstName = malayFemaleFirstNames.get(random.nextInt(malayFemaleFirstNames.size()));
+                    firstName = MALAY_FEMALE_FIRST_NAMES.get(random.nextInt(MALAY_FEMALE_FIRST_NAMES.size()));
                 }
-                lastName = malayLastNames.get(random.nextInt(malayLastNames.size()));
+                lastName = MALAY_LAST_NAMES.get(random.nextInt(MALAY_LAST_NAMES.size()));
             } else if (i % 4 == 2) { // Chinese Names
                 if (i % 2 == 0) {
-                    firstName = chineseMaleFirstNames.get(random.nextInt(chineseMaleFirstNames.size()));
+                    firstName = CHINESE_MALE_FIRST_NAMES.get(random.nextInt(CHINESE_MALE_FIRST_NAMES.size()));
                 } else {
-                    firstName = chineseFemaleFirstNames.get(random.nextInt(chineseFemaleFirstNames.size()));
+                    firstName = CHINESE_FEMALE_FIRST_NAMES.get(random.nextInt(CHINESE_FEMALE_FIRST_NAMES.size()));
                 }
-                lastName = chineseLastNames.get(random.nextInt(chineseLastNames.size()));
+                lastName = CHINESE_LAST_NAMES.get(random.nextInt(CHINESE_LAST_NAMES.size()));
             } else { // Foreign Names
                 if (i % 2 == 0) {
-                    firstName = foreignMaleFirstNames.get(random.nextInt(foreignMaleFirstNames.size()));
+                    firstName = FOREIGN_MALE_FIRST_NAMES.get(random.nextInt(FOREIGN_MALE_FIRST_NAMES.size()));
                 } else {
-                    firstName = foreignFemaleFirstNames.get(random.nextInt(foreignFemaleFirstNames.size()));
+                    firstName = FOREIGN_FEMALE_FIRST_NAMES.get(random.nextInt(FOREIGN_FEMALE_FIRST_NAMES.size()));
                 }
-                lastName = foreignLastNames.get(random.nextInt(foreignLastNames.size()));
+                lastName = FOREIGN_LAST_NAMES.get(random.nextInt(FOREIGN_LAST_NAMES.size()));
             }
 
             // Generate random airport codes for 'from' and 'to'
-            String from = airportCodes.get(random.nextInt(airportCodes.size()));
-            String to = airportCodes.get(random.nextInt(airportCodes.size()));
+            String from = AIRPORT_CODES.get(random.nextInt(AIRPORT_CODES.size()));
+            String to = AIRPORT_CODES.get(random.nextInt(AIRPORT_CODES.size()));
             BookingClass bookingClass = BookingClass.values()[random.nextInt(BookingClass.values().length)];
 
             // Create customer and booking
-            Customer customer = new Customer();
-            customer.setFirstName(firstName);
-            customer.setLastName(lastName);
+            Customer customer = new Customer(firstName, lastName);
 
             LocalDate date = LocalDate.now().plusDays(2 * i);
             Booking booking = new Booking("FUN-" + (i + 1), date, customer, BookingStatus.CONFIRMED, from, to, bookingClass);
-            customer.getBookings().add(booking);
 
             customers.add(customer);
             bookings.add(booking);
         }
 
-        // Reset the database on each start
         db.setCustomers(customers);
         db.setBookings(bookings);
     }
@@ -115,35 +151,49 @@ public class FlightBookingService {
     }
 
     private Booking findBooking(String bookingNumber, String firstName, String lastName) {
-        return db.getBookings().stream()
-                .filter(b -> b.getBookingNumber().equalsIgnoreCase(bookingNumber))
-                .filter(b -> b.getCustomer().getFirstName().equalsIgnoreCase(firstName))
-                .filter(b -> b.getCustomer().getLastName().equalsIgnoreCase(lastName))
-                .findFirst()
-                .orElseThrow(() -> new IllegalArgumentException("Booking not found"));
+        var booking = db.findBooking(bookingNumber);
+        if (booking == null
+                || !booking.getCustomer().getFirstName().equalsIgnoreCase(firstName)
+                || !booking.getCustomer().getLastName().equalsIgnoreCase(lastName)) {
+            throw new IllegalArgumentException("Booking not found");
+        }
+        return booking;
     }
 
     public BookingDetails getBookingDetails(String bookingNumber, String firstName, String lastName) {
-        var booking = findBooking(bookingNumber, firstName, lastName);
-        return toBookingDetails(booking);
+        BookingDetails details = bookingNumber == null ? null
+                : bookingDetails.get(BookingData.normalize(bookingNumber), number -> {
+                    var booking = db.findBooking(number);
+                    return booking == null ? null : toBookingDetails(booking);
+                });
+        if (details == null
+                || !details.firstName().equalsIgnoreCase(firstName)
+                || !details.lastName().equalsIgnoreCase(lastName)) {
+            throw new IllegalArgumentException("Booking not found");
+        }
+        return details;
     }
 
     public void changeBooking(String bookingNumber, String firstName, String lastName, String newDate, String from, String to) {
         var booking = findBooking(bookingNumber, firstName, lastName);
-        if(booking.getDate().isBefore(LocalDate.now().plusDays(1))){
-            throw new IllegalArgumentException("Booking cannot be changed within 24 hours of the start date.");
-        }
-        booking.setDate(LocalDate.parse(newDate));
-        booking.setFrom(from);
-        booking.setTo(to);
+        var date = LocalDate.parse(newDate);
+        // The rule is checked against the snapshot being replaced, so it is atomic with the update
+        db.update(booking, current -> {
+            if (current.getDate().isBefore(LocalDate.now().plusDays(1))) {
+                throw new IllegalArgumentException("Booking cannot be changed within 24 hours of the start date.");
+            }
+            return current.withRoute(date, from, to);
+        });
     }
 
     public void cancelBooking(String bookingNumber, String firstName, String lastName) {
         var booking = findBooking(bookingNumber, firstName, lastName);
-        if (booking.getDate().isBefore(LocalDate.now().plusDays(2))) {
-            throw new IllegalArgumentException("Booking cannot be cancelled within 48 hours of the start date.");
-        }
-        booking.setBookingStatus(BookingStatus.CANCELLED);
+        db.update(booking, current -> {
+            if (current.getDate().isBefore(LocalDate.now().plusDays(2))) {
+                throw new IllegalArgumentException("Booking cannot be cancelled within 48 hours of the start date.");
+            }
+            return current.withBookingStatus(BookingStatus.CANCELLED);
+        });
     }
 
     private BookingDetails toBookingDetails(Booking booking){
@@ -1,15 +0,0 @@
-package ai.spring.demo.ai.playground.services;
-
-import java.util.Map;
-
-import org.springframework.ai.chat.client.AdvisedRequest;
-import org.springframework.ai.chat.client.RequestResponseAdvisor;
-
-public class LoggingAdvisor implements RequestResponseAdvisor {
-
-	@Override
-	public AdvisedRequest adviseRequest(AdvisedRequest request, Map<String, Object> context) {
-		System.out.println("Request: " + request);
-		return request;
-	}
-}
\ No newline at end of file
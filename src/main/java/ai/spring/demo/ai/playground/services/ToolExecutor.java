@@ -0,0 +1,140 @@
+package ai.spring.demo.ai.playground.services;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import ai.spring.demo.ai.playground.data.BookingData;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Bounds tool calls by a per-tool timeout and orders the changes of a booking.
+ * <p>
+ * The chat model runs the tool calls of a response one after another on the thread of the
+ * chat turn, so this does not make them parallel; calls of concurrent conversations overlap
+ * on their own threads already. A read runs on a virtual thread, so that the caller can stop
+ * waiting once the timeout has passed, and is then interrupted. A mutation runs on the
+ * caller's thread once the earlier changes of the same booking number are done, which run
+ * one at a time in arrival order, and is dropped if that takes longer than the timeout.
+ * Once started it is left to finish, so it is applied or rejected as a whole.
+ * <p>
+ * Latencies are recorded by {@code playground.tool.calls} with {@code tool} and
+ * {@code outcome} tags.
+ */
+@Component
+public class ToolExecutor implements AutoCloseable {
+
+    private static final int STRIPES = 64;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final ReentrantLock[] bookingLocks = new ReentrantLock[STRIPES];
+
+    private final MeterRegistry meterRegistry;
+
+    public ToolExecutor(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        for (int i = 0; i < STRIPES; i++) {
+            bookingLocks[i] = new ReentrantLock(true);
+        }
+    }
+
+    /**
+     * Wraps a read-only tool.
+     */
+    public <I, O> Function<I, O> bounded(String tool, Duration timeout, Function<I, O> function) {
+        Map<String, Timer> timers = timers(tool);
+        return input -> {
+            long start = System.nanoTime();
+            String outcome = "error";
+            Future<O> future = executor.submit(() -> function.apply(input));
+            try {
+                O result = future.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+                outcome = "success";
+                return result;
+            }
+            catch (TimeoutException e) {
+                outcome = "timeout";
+                future.cancel(true);
+                throw new IllegalStateException(tool + " timed out after " + timeout.toMillis() + " ms");
+            }
+            catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw new IllegalStateException(tool + " failed", e.getCause());
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(true);
+                throw new IllegalStateException(tool + " was interrupted", e);
+            }
+            finally {
+                timers.get(outcome).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        };
+    }
+
+    /**
+     * Wraps a tool changing the booking returned by {@code bookingNumber}.
+     */
+    public <I, O> Function<I, O> orderedByBooking(String tool, Duration timeout, Function<I, String> bookingNumber,
+            Function<I, O> function) {
+        Map<String, Timer> timers = timers(tool);
+        return input -> {
+            long start = System.nanoTime();
+            String outcome = "error";
+            String key = bookingNumber.apply(input);
+            // Numbers are looked up normalized, so they are ordered normalized too
+            int hash = key == null ? 0 : BookingData.normalize(key).hashCode();
+            ReentrantLock lock = bookingLocks[(hash & 0x7fffffff) % STRIPES];
+            try {
+                if (!lock.tryLock(timeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                    outcome = "rejected";
+                    throw new RejectedExecutionException(tool + " was not started within " + timeout.toMillis() + " ms");
+                }
+                try {
+                    O result = function.apply(input);
+                    outcome = "success";
+                    return result;
+                }
+                finally {
+                    lock.unlock();
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(tool + " was interrupted", e);
+            }
+            finally {
+                timers.get(outcome).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        };
+    }
+
+    private Map<String, Timer> timers(String tool) {
+        return Stream.of("success", "error", "timeout", "rejected")
+                .collect(Collectors.toMap(Function.identity(), outcome -> Timer.builder("playground.tool.calls")
+                        .tag("tool", tool)
+                        .tag("outcome", outcome)
+                        .register(meterRegistry)));
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
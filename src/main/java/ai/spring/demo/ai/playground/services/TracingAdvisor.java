@@ -0,0 +1,245 @@
+package ai.spring.demo.ai.playground.services;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Pattern;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+
+import org.springframework.ai.chat.client.AdvisedRequest;
+import org.springframework.ai.chat.client.RequestResponseAdvisor;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import static org.springframework.ai.chat.client.advisor.AbstractChatMemoryAdvisor.CHAT_MEMORY_CONVERSATION_ID_KEY;
+
+/**
+ * Advisor tracing a sample of the chat requests and their responses to the log.
+ * <p>
+ * A sampled request only captures references to its fields in a small record and puts it
+ * into a lock-free ring buffer; requests that are not sampled, or all of them when the
+ * sample rate is 0, cost a random number at most. A background thread drains the buffer,
+ * redacts the texts with the configured patterns, truncates them to
+ * {@code maxFieldLength} characters and writes them to the log. When the buffer is full,
+ * traces are dropped and counted in {@code playground.tracing.dropped} rather than slowing
+ * down requests.
+ */
+@Component
+public class TracingAdvisor implements RequestResponseAdvisor, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(TracingAdvisor.class);
+
+    private static final String TRACE_CONTEXT_KEY = TracingAdvisor.class.getName() + ".trace";
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final double sampleRate;
+
+    private final int maxFieldLength;
+
+    private final List<Pattern> redactPatterns;
+
+    private final AtomicReferenceArray<Trace> slots;
+
+    private final int mask;
+
+    // Next sequence to claim
+    private final AtomicLong head = new AtomicLong();
+
+    // Next sequence to drain, written by the drain thread only
+    private volatile long tail;
+
+    private final AtomicLong traceIds = new AtomicLong();
+
+    private final Counter dropped;
+
+    private final Thread drainer;
+
+    private volatile boolean closed;
+
+    private sealed interface Trace {
+    }
+
+    private record RequestTrace(long id, Object conversationId, String userText, @Nullable String systemText,
+            int messages, List<String> functions) implements Trace {
+    }
+
+    private record ResponseTrace(long id, long durationNanos, int chunks, String output, @Nullable Usage usage,
+            @Nullable Throwable error) implements Trace {
+    }
+
+    /**
+     * State of a sampled call, shared by its request and response.
+     */
+    private static final class Sampled {
+
+        final long id;
+        final long start = System.nanoTime();
+        final StringBuilder output = new StringBuilder();
+        int chunks;
+        @Nullable
+        Usage usage;
+
+        Sampled(long id) {
+            this.id = id;
+        }
+    }
+
+    public TracingAdvisor(MeterRegistry meterRegistry,
+            @Value("${playground.tracing.sample-rate:0.1}") double sampleRate,
+            @Value("${playground.tracing.max-field-length:512}") int maxFieldLength,
+            @Value("${playground.tracing.buffer-size:1024}") int bufferSize,
+            @Value("${playground.tracing.redact-patterns:}") List<String> redactPatterns) {
+        this.sampleRate = sampleRate;
+        this.maxFieldLength = maxFieldLength;
+        this.redactPatterns = redactPatterns.stream()
+                .filter(pattern -> !pattern.isBlank())
+                .map(Pattern::compile)
+                .toList();
+        int capacity = Integer.highestOneBit(Math.max(2, bufferSize - 1)) << 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+        this.dropped = Counter.builder("playground.tracing.dropped")
+                .description("Traces dropped because the buffer was full")
+                .register(meterRegistry);
+        this.drainer = Thread.ofPlatform().name("chat-tracer").daemon().start(this::drain);
+    }
+
+    @Override
+    public AdvisedRequest adviseRequest(AdvisedRequest request, Map<String, Object> context) {
+        if (sampleRate <= 0 || (sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate)) {
+            return request;
+        }
+        var sampled = new Sampled(traceIds.incrementAndGet());
+        context.put(TRACE_CONTEXT_KEY, sampled);
+        offer(new RequestTrace(sampled.id, context.getOrDefault(CHAT_MEMORY_CONVERSATION_ID_KEY, "-"),
+                request.userText(), request.systemText(), request.messages().size(), request.functionNames()));
+        return request;
+    }
+
+    @Override
+    public ChatResponse adviseResponse(ChatResponse response, Map<String, Object> context) {
+        if (context.get(TRACE_CONTEXT_KEY) instanceof Sampled sampled) {
+            collect(sampled, response);
+            complete(sampled, null);
+        }
+        return response;
+    }
+
+    @Override
+    public Flux<ChatResponse> adviseResponse(Flux<ChatResponse> fluxResponse, Map<String, Object> context) {
+        if (!(context.get(TRACE_CONTEXT_KEY) instanceof Sampled sampled)) {
+            return fluxResponse;
+        }
+        return fluxResponse.doOnNext(response -> collect(sampled, response))
+                .doOnError(error -> complete(sampled, error))
+                .doOnComplete(() -> complete(sampled, null));
+    }
+
+    private void collect(Sampled sampled, ChatResponse response) {
+        sampled.chunks++;
+        if (response.getResult() != null && response.getResult().getOutput() != null) {
+            String content = response.getResult().getOutput().getContent();
+            int room = maxFieldLength - sampled.output.length();
+            if (content != null && room > 0) {
+                sampled.output.append(content, 0, Math.min(room, content.length()));
+            }
+        }
+        if (response.getMetadata() != null && response.getMetadata().getUsage() != null) {
+            sampled.usage = response.getMetadata().getUsage();
+        }
+    }
+
+    private void complete(Sampled sampled, @Nullable Throwable error) {
+        offer(new ResponseTrace(sampled.id, System.nanoTime() - sampled.start, sampled.chunks,
+                sampled.output.toString(), sampled.usage, error));
+    }
+
+    private void offer(Trace trace) {
+        long sequence;
+        do {
+            sequence = head.get();
+            if (sequence - tail >= slots.length()) {
+                dropped.increment();
+                return;
+            }
+        }
+        while (!head.compareAndSet(sequence, sequence + 1));
+        slots.lazySet((int) sequence & mask, trace);
+    }
+
+    private void drain() {
+        while (true) {
+            long next = tail;
+            int slot = (int) next & mask;
+            Trace trace = slots.get(slot);
+            if (trace == null) {
+                // Empty, or the claimed slot is not published yet
+                if (closed && head.get() == next) {
+                    return;
+                }
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+            slots.lazySet(slot, null);
+            tail = next + 1;
+            try {
+                log(trace);
+            }
+            catch (RuntimeException e) {
+                logger.warn("Could not write trace", e);
+            }
+        }
+    }
+
+    private void log(Trace trace) {
+        switch (trace) {
+            case RequestTrace request -> logger.info(
+                    "trace={} request conversation={} messages={} functions={} system=\"{}\" user=\"{}\"",
+                    request.id(), request.conversationId(), request.messages(), request.functions(),
+                    clean(request.systemText()), clean(request.userText()));
+            case ResponseTrace response -> logger.info(
+                    "trace={} response duration={}ms chunks={} promptTokens={} generationTokens={} error={} output=\"{}\"",
+                    response.id(), TimeUnit.NANOSECONDS.toMillis(response.durationNanos()), response.chunks(),
+                    response.usage() != null ? response.usage().getPromptTokens() : null,
+                    response.usage() != null ? response.usage().getGenerationTokens() : null,
+                    response.error() != null ? response.error().toString() : "-", clean(response.output()));
+        }
+    }
+
+    private String clean(@Nullable String text) {
+        if (text == null) {
+            return "";
+        }
+        // Redacted before truncating, so that a cut cannot hide a match
+        String redacted = text;
+        for (Pattern pattern : redactPatterns) {
+            redacted = pattern.matcher(redacted).replaceAll("***");
+        }
+        if (redacted.length() > maxFieldLength) {
+            redacted = redacted.substring(0, maxFieldLength) + "...(" + text.length() + " chars)";
+        }
+        return redacted.replace('\n', ' ');
+    }
+
+    /**
+     * Writes the buffered traces before returning.
+     */
+    @Override
+    public void close() throws InterruptedException {
+        closed = true;
+        drainer.join(TimeUnit.SECONDS.toMillis(5));
+    }
+}
@@ -0,0 +1,74 @@
+package ai.spring.demo.ai.playground.vectorstore;
+
+import java.util.Arrays;
+
+/**
+ * Unbounded max-heap of (score, node) pairs, the candidate queue of a graph search. Like
+ * {@link TopK} it is backed by primitive arrays and reused across searches.
+ */
+final class CandidateQueue {
+
+    private float[] scores = new float[64];
+    private int[] nodes = new int[64];
+    private int size;
+
+    void clear() {
+        size = 0;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    float topScore() {
+        return scores[0];
+    }
+
+    void push(float score, int node) {
+        if (size == scores.length) {
+            scores = Arrays.copyOf(scores, size * 2);
+            nodes = Arrays.copyOf(nodes, size * 2);
+        }
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (scores[parent] >= score) {
+                break;
+            }
+            scores[i] = scores[parent];
+            nodes[i] = nodes[parent];
+            i = parent;
+        }
+        scores[i] = score;
+        nodes[i] = node;
+    }
+
+    /**
+     * Removes the best candidate and returns its node.
+     */
+    int pop() {
+        int top = nodes[0];
+        size--;
+        float score = scores[size];
+        int node = nodes[size];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && scores[child + 1] > scores[child]) {
+                child++;
+            }
+            if (score >= scores[child]) {
+                break;
+            }
+            scores[i] = scores[child];
+            nodes[i] = nodes[child];
+            i = child;
+        }
+        scores[i] = score;
+        nodes[i] = node;
+        return top;
+    }
+}
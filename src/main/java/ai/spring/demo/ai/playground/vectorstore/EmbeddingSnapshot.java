@@ -0,0 +1,201 @@
+package ai.spring.demo.ai.playground.vectorstore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.ai.document.Document;
+
+/**
+ * Local file of document embeddings keyed by the SHA-256 of the document content, so that
+ * ingestion only sends new or changed chunks to the embedding model.
+ * <p>
+ * Layout: {@code [int magic][int format][int modelIdLength][modelId][int dimensions][int count]}
+ * followed by {@code count} fixed-size records of {@code [32 byte hash][float * dimensions]}.
+ * The file is memory-mapped and only the hashes are read up front; a snapshot written for
+ * another embedding model or with another number of dimensions is ignored as a whole.
+ */
+public final class EmbeddingSnapshot {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddingSnapshot.class);
+
+    private static final int MAGIC = 0x454D4253; // "EMBS"
+
+    private static final int FORMAT = 1;
+
+    private static final int HASH_SIZE = 32;
+
+    private final Path file;
+
+    private final String modelId;
+
+    private final MappedByteBuffer records;
+
+    private final int dimensions;
+
+    private final Map<String, Integer> offsetsByHash;
+
+    private EmbeddingSnapshot(Path file, String modelId, MappedByteBuffer records, int dimensions,
+            Map<String, Integer> offsetsByHash) {
+        this.file = file;
+        this.modelId = modelId;
+        this.records = records;
+        this.dimensions = dimensions;
+        this.offsetsByHash = offsetsByHash;
+    }
+
+    /**
+     * Maps the snapshot at {@code file}. A missing, unreadable, damaged or foreign snapshot
+     * gives an empty one that is replaced on the next {@link #write(List)}.
+     */
+    public static EmbeddingSnapshot open(Path file, String modelId) {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return read(file, modelId, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+        catch (NoSuchFileException e) {
+            return empty(file, modelId);
+        }
+        catch (IOException | RuntimeException e) {
+            // The snapshot only saves embedding calls, it must not keep the application from starting
+            logger.warn("Ignoring {}, it cannot be read", file, e);
+            return empty(file, modelId);
+        }
+    }
+
+    private static EmbeddingSnapshot read(Path file, String modelId, MappedByteBuffer buffer) {
+        if (buffer.remaining() < 3 * Integer.BYTES || buffer.getInt() != MAGIC || buffer.getInt() != FORMAT) {
+            logger.warn("Ignoring {}, it is not an embedding snapshot", file);
+            return empty(file, modelId);
+        }
+        int modelIdLength = buffer.getInt();
+        if (modelIdLength < 0 || modelIdLength > buffer.remaining() - 2 * Integer.BYTES) {
+            logger.warn("Ignoring {}, its header is damaged", file);
+            return empty(file, modelId);
+        }
+        byte[] storedModelId = new byte[modelIdLength];
+        buffer.get(storedModelId);
+        if (!modelId.equals(new String(storedModelId, StandardCharsets.UTF_8))) {
+            logger.info("Ignoring {}, it was written for embedding model {}", file,
+                    new String(storedModelId, StandardCharsets.UTF_8));
+            return empty(file, modelId);
+        }
+        int dimensions = buffer.getInt();
+        int count = buffer.getInt();
+        long recordSize = HASH_SIZE + (long) dimensions * Float.BYTES;
+        if (dimensions < 0 || count < 0) {
+            logger.warn("Ignoring {}, its header is damaged", file);
+            return empty(file, modelId);
+        }
+        if (buffer.remaining() < count * recordSize) {
+            logger.warn("Ignoring {}, it is truncated", file);
+            return empty(file, modelId);
+        }
+        Map<String, Integer> offsets = new HashMap<>(count * 2);
+        byte[] hash = new byte[HASH_SIZE];
+        for (int i = 0; i < count; i++) {
+            int offset = buffer.position();
+            buffer.get(hash);
+            offsets.put(HexFormat.of().formatHex(hash), offset + HASH_SIZE);
+            buffer.position(offset + (int) recordSize);
+        }
+        return new EmbeddingSnapshot(file, modelId, buffer, dimensions, offsets);
+    }
+
+    private static EmbeddingSnapshot empty(Path file, String modelId) {
+        return new EmbeddingSnapshot(file, modelId, null, 0, Map.of());
+    }
+
+    /**
+     * Hex SHA-256 of the content, usable as a stable document id.
+     */
+    public static String contentHash(String content) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash);
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public int size() {
+        return offsetsByHash.size();
+    }
+
+    /**
+     * Sets the stored embedding on every document whose content is in the snapshot.
+     * @return the documents that still need to be embedded
+     */
+    public List<Document> restore(List<Document> documents) {
+        List<Document> missing = new ArrayList<>();
+        for (Document document : documents) {
+            Integer offset = offsetsByHash.get(contentHash(document.getContent()));
+            if (offset == null) {
+                missing.add(document);
+                continue;
+            }
+            ByteBuffer vector = records.slice(offset, dimensions * Float.BYTES);
+            List<Double> embedding = new ArrayList<>(dimensions);
+            for (int d = 0; d < dimensions; d++) {
+                embedding.add((double) vector.getFloat());
+            }
+            document.setEmbedding(embedding);
+        }
+        return missing;
+    }
+
+    /**
+     * Replaces the snapshot with the embeddings of {@code documents}, which must all have
+     * one. The file is written next to the old one and atomically moved into place.
+     */
+    public void write(List<Document> documents) {
+        int dimensions = documents.isEmpty() ? 0 : documents.get(0).getEmbedding().size();
+        byte[] model = modelId.getBytes(StandardCharsets.UTF_8);
+        int recordSize = HASH_SIZE + dimensions * Float.BYTES;
+        long size = 5L * Integer.BYTES + model.length + (long) documents.size() * recordSize;
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                buffer.putInt(MAGIC).putInt(FORMAT).putInt(model.length).put(model);
+                buffer.putInt(dimensions).putInt(documents.size());
+                for (Document document : documents) {
+                    List<Double> embedding = document.getEmbedding();
+                    if (embedding.size() != dimensions) {
+                        throw new IllegalArgumentException("Document " + document.getId() + " has "
+                                + embedding.size() + " dimensions, expected " + dimensions);
+                    }
+                    buffer.put(HexFormat.of().parseHex(contentHash(document.getContent())));
+                    for (Double component : embedding) {
+                        buffer.putFloat(component.floatValue());
+                    }
+                }
+                buffer.force();
+            }
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,694 @@
+package ai.spring.demo.ai.playground.vectorstore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.lang.Nullable;
+
+/**
+ * Approximate in-memory {@link VectorStore} backed by a Hierarchical Navigable Small World
+ * graph (Malkov and Yashunin, 2016).
+ * <p>
+ * Each node is linked to at most {@code m} neighbours per layer ({@code 2 * m} on the bottom
+ * layer), chosen with the neighbour selection heuristic from a search of width
+ * {@code efConstruction}. Queries descend greedily through the upper layers and search the
+ * bottom layer with width {@code max(efSearch, topK)}; larger values trade latency for
+ * recall.
+ * <p>
+ * Inserts and searches run concurrently: neighbour lists are replaced copy-on-write under
+ * a per-node lock, so searches never block. Deleted documents stay in the graph as
+ * tombstones that are traversed but never returned, until they outnumber the live ones and
+ * the graph is rebuilt. The graph can be written to and read back from disk with
+ * {@link #save(Path)} and {@link #load(Path)}.
+ * <p>
+ * Filter expressions are evaluated against the metadata of each node reached on the bottom
+ * layer, as described in {@link MetadataFilter}. Like tombstones, nodes that do not match
+ * are traversed but not collected, so a selective filter can return fewer than
+ * {@code topK} documents unless {@code efSearch} is raised.
+ */
+public class HnswVectorStore implements VersionedVectorStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(HnswVectorStore.class);
+
+    private static final int MAGIC = 0x484E5357; // "HNSW"
+
+    private static final int FORMAT = 1;
+
+    private static final int PARALLEL_INSERT_THRESHOLD = 1024;
+
+    private static final int MIN_TOMBSTONES_TO_COMPACT = 1024;
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final EmbeddingModel embeddingModel;
+
+    private final int m;
+
+    private final int efConstruction;
+
+    private volatile int efSearch;
+
+    private final double levelMultiplier;
+
+    // Inserts, deletes and searches share the read lock, loading and rebuilding take the write lock
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Object nodesLock = new Object();
+
+    private volatile Node[] nodes = new Node[1024];
+
+    private int nodeCount;
+
+    private final Map<String, Node> nodesById = new ConcurrentHashMap<>();
+
+    private final AtomicInteger tombstones = new AtomicInteger();
+
+    private final AtomicLong version = new AtomicLong();
+
+    private final Object entryLock = new Object();
+
+    private volatile Node entryPoint;
+
+    private volatile int dimensions;
+
+    private final Queue<Scratch> scratchPool = new ConcurrentLinkedQueue<>();
+
+    private static final class Node {
+
+        final int index;
+        final float[] vector;
+        // Neighbour indexes per layer, replaced as a whole under the node's monitor
+        final AtomicReferenceArray<int[]> links;
+        volatile Document document;
+
+        Node(int index, float[] vector, int level, Document document) {
+            this.index = index;
+            this.vector = vector;
+            this.links = new AtomicReferenceArray<>(level + 1);
+            for (int l = 0; l <= level; l++) {
+                links.set(l, new int[0]);
+            }
+            this.document = document;
+        }
+
+        int level() {
+            return links.length() - 1;
+        }
+    }
+
+    private static final class Scratch {
+
+        int[] visited = new int[1024];
+        int visit;
+        final CandidateQueue candidates = new CandidateQueue();
+        final TopK results = new TopK(64);
+        float[] scores = new float[64];
+        int[] rows = new int[64];
+        float greedyScore;
+
+        void startVisit() {
+            if (++visit == 0) {
+                Arrays.fill(visited, 0);
+                visit = 1;
+            }
+        }
+
+        /**
+         * Marks a node as visited by the current search.
+         * @return {@code false} if it already was
+         */
+        boolean visit(int node) {
+            if (node >= visited.length) {
+                visited = Arrays.copyOf(visited, Math.max(visited.length * 2, node + 1));
+            }
+            if (visited[node] == visit) {
+                return false;
+            }
+            visited[node] = visit;
+            return true;
+        }
+
+        void ensureCapacity(int ef) {
+            if (scores.length < ef) {
+                scores = new float[ef];
+                rows = new int[ef];
+            }
+        }
+    }
+
+    public HnswVectorStore(EmbeddingModel embeddingModel, int m, int efConstruction, int efSearch) {
+        if (m < 2 || efConstruction < 1 || efSearch < 1) {
+            throw new IllegalArgumentException("HNSW parameters out of range: m=" + m + ", efConstruction="
+                    + efConstruction + ", efSearch=" + efSearch);
+        }
+        this.embeddingModel = embeddingModel;
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.levelMultiplier = 1 / Math.log(m);
+    }
+
+    public int getEfSearch() {
+        return efSearch;
+    }
+
+    public void setEfSearch(int efSearch) {
+        this.efSearch = efSearch;
+    }
+
+    public int size() {
+        return nodesById.size();
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        // Embed outside of the lock, in one request
+        List<String> texts = new ArrayList<>();
+        for (Document document : documents) {
+            if (isEmpty(document.getEmbedding())) {
+                texts.add(document.getContent());
+            }
+        }
+        List<List<Double>> embeddings = texts.isEmpty() ? List.of() : embeddingModel.embed(texts);
+
+        List<float[]> vectors = new ArrayList<>(documents.size());
+        int next = 0;
+        for (Document document : documents) {
+            List<Double> embedding = isEmpty(document.getEmbedding()) ? embeddings.get(next++) : document.getEmbedding();
+            float[] vector = VectorMath.normalize(embedding);
+            checkDimensions(vector, document.getId());
+            vectors.add(vector);
+        }
+
+        lock.readLock().lock();
+        try {
+            IntStream indexes = IntStream.range(0, documents.size());
+            if (documents.size() >= PARALLEL_INSERT_THRESHOLD) {
+                indexes = indexes.parallel();
+            }
+            indexes.forEach(i -> insert(documents.get(i), vectors.get(i)));
+            version.incrementAndGet();
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Optional<Boolean> delete(List<String> idList) {
+        lock.readLock().lock();
+        try {
+            for (String id : idList) {
+                Node node = nodesById.remove(id);
+                if (node != null) {
+                    node.document = null;
+                    tombstones.incrementAndGet();
+                    version.incrementAndGet();
+                }
+            }
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+        if (tombstones.get() >= MIN_TOMBSTONES_TO_COMPACT && tombstones.get() > nodesById.size()) {
+            compact();
+        }
+        return Optional.of(true);
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        // Compiled before embedding, so that a malformed filter fails fast
+        Predicate<Map<String, Object>> filter = request.hasFilterExpression()
+                ? MetadataFilter.of(request.getFilterExpression()) : OffHeapVectorStore.ALL;
+        float[] query = VectorMath.normalize(embeddingModel.embed(request.getQuery()));
+        return search(query, request.getTopK(), request.getSimilarityThreshold(), filter);
+    }
+
+    @Override
+    public long version() {
+        return version.get();
+    }
+
+    /**
+     * Returns approximately the {@code topK} documents most similar to a normalized query
+     * embedding, with their cosine distance in the distance metadata.
+     */
+    @Override
+    public List<Document> search(float[] query, int topK, double similarityThreshold) {
+        return search(query, topK, similarityThreshold, OffHeapVectorStore.ALL);
+    }
+
+    List<Document> search(float[] query, int topK, double similarityThreshold,
+            Predicate<Map<String, Object>> filter) {
+        Scratch scratch = acquireScratch();
+        lock.readLock().lock();
+        try {
+            Node entry = entryPoint;
+            if (entry == null || topK <= 0) {
+                return List.of();
+            }
+            if (query.length != dimensions) {
+                throw new IllegalArgumentException(
+                        "Query has " + query.length + " dimensions, the store has " + dimensions);
+            }
+            int nearest = descend(query, entry, 0, scratch);
+            int ef = Math.max(efSearch, topK);
+            searchLayer(query, nearest, scratch.greedyScore, ef, 0, filter, scratch);
+            int count = scratch.results.drainDescending(scratch.scores, scratch.rows);
+            List<Document> results = new ArrayList<>(Math.min(count, topK));
+            for (int i = 0; i < count && results.size() < topK && scratch.scores[i] >= similarityThreshold; i++) {
+                Document document = node(scratch.rows[i]).document;
+                if (document != null) {
+                    results.add(OffHeapVectorStore.withDistance(document, scratch.scores[i]));
+                }
+            }
+            return results;
+        }
+        finally {
+            lock.readLock().unlock();
+            scratchPool.offer(scratch);
+        }
+    }
+
+    private void insert(Document document, float[] vector) {
+        Node node = allocate(vector, randomLevel(), document);
+        Node previous = nodesById.put(document.getId(), node);
+        if (previous != null) {
+            previous.document = null;
+            tombstones.incrementAndGet();
+        }
+
+        Node entry = entryPoint;
+        if (entry == null) {
+            synchronized (entryLock) {
+                if (entryPoint == null) {
+                    entryPoint = node;
+                    return;
+                }
+                entry = entryPoint;
+            }
+        }
+
+        Scratch scratch = acquireScratch();
+        try {
+            int level = node.level();
+            int nearest = descend(vector, entry, level, scratch);
+            float nearestScore = scratch.greedyScore;
+            for (int l = Math.min(level, entry.level()); l >= 0; l--) {
+                searchLayer(vector, nearest, nearestScore, efConstruction, l, null, scratch);
+                int count = scratch.results.drainDescending(scratch.scores, scratch.rows);
+                int[] neighbours = selectNeighbours(scratch.scores, scratch.rows, count, maxLinks(l), node.index);
+                node.links.set(l, neighbours);
+                for (int neighbour : neighbours) {
+                    link(node(neighbour), node.index, l);
+                }
+                nearest = scratch.rows[0];
+                nearestScore = scratch.scores[0];
+            }
+        }
+        finally {
+            scratchPool.offer(scratch);
+        }
+
+        if (node.level() > entry.level()) {
+            synchronized (entryLock) {
+                if (node.level() > entryPoint.level()) {
+                    entryPoint = node;
+                }
+            }
+        }
+    }
+
+    private Node allocate(float[] vector, int level, Document document) {
+        synchronized (nodesLock) {
+            Node[] current = nodes;
+            if (nodeCount == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+            }
+            var node = new Node(nodeCount, vector, level, document);
+            current[nodeCount++] = node;
+            nodes = current;
+            return node;
+        }
+    }
+
+    private Node node(int index) {
+        return nodes[index];
+    }
+
+    private int maxLinks(int level) {
+        return level == 0 ? 2 * m : m;
+    }
+
+    private int randomLevel() {
+        return (int) (-Math.log(1 - ThreadLocalRandom.current().nextDouble()) * levelMultiplier);
+    }
+
+    /**
+     * Greedy search from {@code entry} through the layers above {@code level}.
+     * @return the node closest to {@code query} found on layer {@code level + 1}, its
+     * similarity is left in {@link Scratch#greedyScore}
+     */
+    private int descend(float[] query, Node entry, int level, Scratch scratch) {
+        int current = entry.index;
+        float currentScore = VectorMath.dot(query, entry.vector, dimensions);
+        for (int l = entry.level(); l > level; l--) {
+            boolean improved = true;
+            while (improved) {
+                improved = false;
+                for (int neighbour : node(current).links.get(l)) {
+                    float score = VectorMath.dot(query, node(neighbour).vector, dimensions);
+                    if (score > currentScore) {
+                        current = neighbour;
+                        currentScore = score;
+                        improved = true;
+                    }
+                }
+            }
+        }
+        scratch.greedyScore = currentScore;
+        return current;
+    }
+
+    /**
+     * Best-first search of width {@code ef} on one layer, leaving the best nodes found in
+     * {@link Scratch#results}. With a {@code filter}, tombstones and the nodes it rejects
+     * are traversed but not collected; without one, every node is collected.
+     */
+    private void searchLayer(float[] query, int entry, float entryScore, int ef, int level,
+            @Nullable Predicate<Map<String, Object>> filter, Scratch scratch) {
+        scratch.ensureCapacity(ef);
+        scratch.startVisit();
+        CandidateQueue candidates = scratch.candidates;
+        TopK results = scratch.results;
+        candidates.clear();
+        results.reset(ef);
+
+        scratch.visit(entry);
+        candidates.push(entryScore, entry);
+        if (collects(node(entry), filter)) {
+            results.offer(entryScore, entry);
+        }
+        while (!candidates.isEmpty() && candidates.topScore() >= results.threshold()) {
+            int current = candidates.pop();
+            for (int neighbour : node(current).links.get(level)) {
+                if (!scratch.visit(neighbour)) {
+                    continue;
+                }
+                Node node = node(neighbour);
+                float score = VectorMath.dot(query, node.vector, dimensions);
+                if (score > results.threshold()) {
+                    candidates.push(score, neighbour);
+                    if (collects(node, filter)) {
+                        results.offer(score, neighbour);
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean collects(Node node, @Nullable Predicate<Map<String, Object>> filter) {
+        if (filter == null) {
+            return true;
+        }
+        Document document = node.document;
+        return document != null && (filter == OffHeapVectorStore.ALL || filter.test(document.getMetadata()));
+    }
+
+    /**
+     * Neighbour selection heuristic: walking the candidates from the most similar, keeps
+     * those closer to the base node than to any neighbour already kept, so that links
+     * spread out in different directions instead of clustering.
+     * @param scores similarities to the base node, in descending order
+     */
+    private int[] selectNeighbours(float[] scores, int[] candidates, int count, int max, int self) {
+        int[] selected = new int[Math.min(count, max)];
+        int size = 0;
+        for (int i = 0; i < count && size < selected.length; i++) {
+            int candidate = candidates[i];
+            if (candidate == self) {
+                continue;
+            }
+            float[] vector = node(candidate).vector;
+            boolean diverse = true;
+            for (int j = 0; j < size && diverse; j++) {
+                diverse = VectorMath.dot(vector, node(selected[j]).vector, dimensions) < scores[i];
+            }
+            if (diverse) {
+                selected[size++] = candidate;
+            }
+        }
+        return size == selected.length ? selected : Arrays.copyOf(selected, size);
+    }
+
+    /**
+     * Adds a back link from {@code node} to {@code neighbour}, re-selecting the neighbours
+     * of {@code node} if it is full.
+     */
+    private void link(Node node, int neighbour, int level) {
+        synchronized (node) {
+            int[] current = node.links.get(level);
+            int max = maxLinks(level);
+            if (current.length < max) {
+                int[] updated = Arrays.copyOf(current, current.length + 1);
+                updated[current.length] = neighbour;
+                node.links.set(level, updated);
+                return;
+            }
+            int count = current.length + 1;
+            float[] scores = new float[count];
+            int[] candidates = Arrays.copyOf(current, count);
+            candidates[current.length] = neighbour;
+            for (int i = 0; i < count; i++) {
+                scores[i] = VectorMath.dot(node.vector, node(candidates[i]).vector, dimensions);
+            }
+            sortDescending(scores, candidates, count);
+            node.links.set(level, selectNeighbours(scores, candidates, count, max, node.index));
+        }
+    }
+
+    private static void sortDescending(float[] scores, int[] rows, int count) {
+        for (int i = 1; i < count; i++) {
+            float score = scores[i];
+            int row = rows[i];
+            int j = i - 1;
+            for (; j >= 0 && scores[j] < score; j--) {
+                scores[j + 1] = scores[j];
+                rows[j + 1] = rows[j];
+            }
+            scores[j + 1] = score;
+            rows[j + 1] = row;
+        }
+    }
+
+    /**
+     * Rebuilds the graph from the live documents, dropping the tombstones.
+     */
+    public void compact() {
+        lock.writeLock().lock();
+        try {
+            long start = System.nanoTime();
+            int removed = tombstones.get();
+            List<Node> live = new ArrayList<>(nodesById.size());
+            for (int i = 0; i < nodeCount; i++) {
+                if (nodes[i].document != null) {
+                    live.add(nodes[i]);
+                }
+            }
+            clear();
+            IntStream.range(0, live.size()).parallel()
+                    .forEach(i -> insert(live.get(i).document, live.get(i).vector));
+            logger.info("Rebuilt HNSW graph of {} documents without {} deleted ones in {} ms", live.size(), removed,
+                    (System.nanoTime() - start) / 1_000_000);
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void clear() {
+        synchronized (nodesLock) {
+            nodes = new Node[1024];
+            nodeCount = 0;
+        }
+        nodesById.clear();
+        tombstones.set(0);
+        entryPoint = null;
+    }
+
+    /**
+     * Writes the graph, vectors and documents to {@code file}, replacing it atomically.
+     * <p>
+     * Layout: {@code [int magic][int format][int dimensions][int m][int count][int entry]}
+     * followed by {@code count} nodes of {@code [int level][float * dimensions]}, one
+     * {@code [int length][int * length]} neighbour list per layer and, for live nodes,
+     * id, content and JSON metadata as length-prefixed UTF-8.
+     */
+    public void save(Path file) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        lock.writeLock().lock();
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16))) {
+            Node entry = entryPoint;
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeInt(dimensions);
+            out.writeInt(m);
+            out.writeInt(nodeCount);
+            out.writeInt(entry == null ? -1 : entry.index);
+            for (int i = 0; i < nodeCount; i++) {
+                Node node = nodes[i];
+                out.writeInt(node.level());
+                for (float component : node.vector) {
+                    out.writeFloat(component);
+                }
+                for (int l = 0; l <= node.level(); l++) {
+                    int[] links = node.links.get(l);
+                    out.writeInt(links.length);
+                    for (int link : links) {
+                        out.writeInt(link);
+                    }
+                }
+                Document document = node.document;
+                out.writeBoolean(document != null);
+                if (document != null) {
+                    writeString(out, document.getId());
+                    writeString(out, document.getContent());
+                    writeString(out, objectMapper.writeValueAsString(document.getMetadata()));
+                }
+            }
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Replaces the contents of this store with a graph written by {@link #save(Path)}.
+     */
+    public void load(Path file) throws IOException {
+        long start = System.nanoTime();
+        lock.writeLock().lock();
+        try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT) {
+                throw new IOException("Not an HNSW graph: " + file);
+            }
+            int fileDimensions = in.readInt();
+            int fileM = in.readInt();
+            if (fileM != m) {
+                logger.warn("{} was built with m={}, new documents are linked with m={}", file, fileM, m);
+            }
+            int count = in.readInt();
+            int entry = in.readInt();
+            clear();
+            dimensions = fileDimensions;
+            Node[] loaded = new Node[Math.max(1024, count)];
+            for (int i = 0; i < count; i++) {
+                int level = in.readInt();
+                float[] vector = new float[fileDimensions];
+                for (int d = 0; d < fileDimensions; d++) {
+                    vector[d] = in.readFloat();
+                }
+                var node = new Node(i, vector, level, null);
+                for (int l = 0; l <= level; l++) {
+                    int[] links = new int[in.readInt()];
+                    for (int k = 0; k < links.length; k++) {
+                        links[k] = in.readInt();
+                    }
+                    node.links.set(l, links);
+                }
+                if (in.readBoolean()) {
+                    String id = readString(in);
+                    String content = readString(in);
+                    Map<String, Object> metadata = objectMapper.readValue(readString(in), new TypeReference<>() {
+                    });
+                    node.document = new Document(id, content, metadata);
+                    nodesById.put(id, node);
+                }
+                else {
+                    tombstones.incrementAndGet();
+                }
+                loaded[i] = node;
+            }
+            synchronized (nodesLock) {
+                nodes = loaded;
+                nodeCount = count;
+            }
+            entryPoint = entry < 0 ? null : loaded[entry];
+            version.incrementAndGet();
+            logger.info("Loaded HNSW graph of {} documents from {} in {} ms", nodesById.size(), file,
+                    (System.nanoTime() - start) / 1_000_000);
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void checkDimensions(float[] vector, String id) {
+        if (dimensions == 0) {
+            synchronized (entryLock) {
+                if (dimensions == 0) {
+                    dimensions = vector.length;
+                }
+            }
+        }
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException(
+                    "Document " + id + " has " + vector.length + " dimensions, the store has " + dimensions);
+        }
+    }
+
+    private Scratch acquireScratch() {
+        Scratch scratch = scratchPool.poll();
+        return scratch != null ? scratch : new Scratch();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static boolean isEmpty(List<Double> embedding) {
+        return embedding == null || embedding.isEmpty();
+    }
+}
@@ -0,0 +1,114 @@
+package ai.spring.demo.ai.playground.vectorstore;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.lang.Nullable;
+
+/**
+ * Evaluates a portable filter expression against the metadata of a document, for the
+ * in-process vector stores.
+ * <p>
+ * Keys are looked up directly in the metadata. Numbers compare by value whatever their
+ * type, other values compare with {@link Comparable} when they have the same type. A
+ * comparison with a missing key, or with values that cannot be ordered, is false.
+ */
+final class MetadataFilter {
+
+    private MetadataFilter() {
+    }
+
+    /**
+     * Compiles {@code expression} once, so that a search only evaluates the returned
+     * predicate per candidate.
+     * @throws IllegalArgumentException if the expression is malformed
+     */
+    static Predicate<Map<String, Object>> of(Filter.Expression expression) {
+        Filter.ExpressionType type = expression.type();
+        return switch (type) {
+            case AND -> of(operand(expression.left())).and(of(operand(expression.right())));
+            case OR -> of(operand(expression.left())).or(of(operand(expression.right())));
+            case NOT -> of(operand(expression.left())).negate();
+            case IN, NIN -> {
+                String key = key(expression);
+                if (!(value(expression) instanceof List<?> values)) {
+                    throw new IllegalArgumentException(type + " needs a list of values: " + expression);
+                }
+                boolean in = type == Filter.ExpressionType.IN;
+                yield metadata -> metadata.containsKey(key)
+                        && values.stream().anyMatch(value -> equal(metadata.get(key), value)) == in;
+            }
+            case EQ, NE, GT, GTE, LT, LTE -> {
+                String key = key(expression);
+                Object value = value(expression);
+                yield metadata -> metadata.containsKey(key) && compare(type, metadata.get(key), value);
+            }
+        };
+    }
+
+    private static Filter.Expression operand(Filter.Operand operand) {
+        if (operand instanceof Filter.Group group) {
+            return group.content();
+        }
+        if (operand instanceof Filter.Expression expression) {
+            return expression;
+        }
+        throw new IllegalArgumentException("Expected an expression but was " + operand);
+    }
+
+    private static String key(Filter.Expression expression) {
+        if (expression.left() instanceof Filter.Key key) {
+            return key.key();
+        }
+        throw new IllegalArgumentException("Expected a key on the left of " + expression);
+    }
+
+    @Nullable
+    private static Object value(Filter.Expression expression) {
+        if (expression.right() instanceof Filter.Value value) {
+            return value.value();
+        }
+        throw new IllegalArgumentException("Expected a value on the right of " + expression);
+    }
+
+    private static boolean compare(Filter.ExpressionType type, @Nullable Object actual, @Nullable Object expected) {
+        if (type == Filter.ExpressionType.EQ) {
+            return equal(actual, expected);
+        }
+        if (type == Filter.ExpressionType.NE) {
+            return !equal(actual, expected);
+        }
+        Integer order = order(actual, expected);
+        if (order == null) {
+            return false;
+        }
+        return switch (type) {
+            case GT -> order > 0;
+            case GTE -> order >= 0;
+            case LT -> order < 0;
+            default -> order <= 0;
+        };
+    }
+
+    private static boolean equal(@Nullable Object actual, @Nullable Object expected) {
+        if (actual instanceof Number a && expected instanceof Number e) {
+            return Double.compare(a.doubleValue(), e.doubleValue()) == 0;
+        }
+        return Objects.equals(actual, expected);
+    }
+
+    @Nullable
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Integer order(@Nullable Object actual, @Nullable Object expected) {
+        if (actual instanceof Number a && expected instanceof Number e) {
+            return Double.compare(a.doubleValue(), e.doubleValue());
+        }
+        if (actual instanceof Comparable a && expected != null && actual.getClass() == expected.getClass()) {
+            return a.compareTo(expected);
+        }
+        return null;
+    }
+}
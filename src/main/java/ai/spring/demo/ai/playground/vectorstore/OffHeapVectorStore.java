@@ -0,0 +1,325 @@
+package ai.spring.demo.ai.playground.vectorstore;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+
+/**
+ * Exact (brute-force) in-memory {@link VectorStore}, a drop-in replacement for
+ * {@code SimpleVectorStore}.
+ * <p>
+ * Embeddings are normalized once on insert and kept as float32 rows in off-heap blocks of
+ * {@value #BLOCK_ROWS} rows, so cosine similarity is a plain dot product computed by
+ * {@link VectorMath}. Large corpora are scanned in parallel on the common fork-join pool,
+ * and the top-k rows are selected with a bounded heap. Scratch buffers are pooled, so a
+ * query only allocates its result list.
+ * <p>
+ * Filter expressions are evaluated against the metadata of each row during the scan, as
+ * described in {@link MetadataFilter}, so the top-k only ranks matching documents.
+ */
+public class OffHeapVectorStore implements VersionedVectorStore {
+
+    static final String DISTANCE_METADATA = "distance";
+
+    static final Predicate<Map<String, Object>> ALL = metadata -> true;
+
+    private static final int BLOCK_ROWS = 4096;
+
+    // Rows scanned by one fork-join leaf; smaller stores are scanned on the calling thread
+    private static final int PARALLEL_THRESHOLD = 4 * BLOCK_ROWS;
+
+    private final EmbeddingModel embeddingModel;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final List<FloatBuffer> blocks = new ArrayList<>();
+
+    private final Map<String, Integer> rowsById = new HashMap<>();
+
+    private Document[] documents = new Document[BLOCK_ROWS];
+
+    private int rows;
+
+    private int deletedRows;
+
+    // Written under the write lock
+    private volatile long version;
+
+    private int dimensions;
+
+    // Pooled rather than thread-local: with virtual threads every request has a new thread
+    private final Queue<Scratch> scratchPool = new ConcurrentLinkedQueue<>();
+
+    private static final class Scratch {
+
+        float[] row = new float[0];
+        final TopK topK = new TopK(16);
+        float[] scores = new float[16];
+        int[] rows = new int[16];
+
+        void ensureCapacity(int dimensions, int k) {
+            if (row.length < dimensions) {
+                row = new float[dimensions];
+            }
+            if (scores.length < k) {
+                scores = new float[k];
+                rows = new int[k];
+            }
+        }
+    }
+
+    public OffHeapVectorStore(EmbeddingModel embeddingModel) {
+        this.embeddingModel = embeddingModel;
+    }
+
+    @Override
+    public void add(List<Document> documents) {
+        // Embed outside of the lock, in one request
+        List<String> texts = new ArrayList<>();
+        for (Document document : documents) {
+            if (isEmpty(document.getEmbedding())) {
+                texts.add(document.getContent());
+            }
+        }
+        List<List<Double>> embeddings = texts.isEmpty() ? List.of() : embeddingModel.embed(texts);
+
+        List<float[]> vectors = new ArrayList<>(documents.size());
+        int next = 0;
+        for (Document document : documents) {
+            List<Double> embedding = isEmpty(document.getEmbedding()) ? embeddings.get(next++) : document.getEmbedding();
+            vectors.add(VectorMath.normalize(embedding));
+        }
+
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < documents.size(); i++) {
+                put(documents.get(i), vectors.get(i));
+            }
+            version++;
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Optional<Boolean> delete(List<String> idList) {
+        lock.writeLock().lock();
+        try {
+            for (String id : idList) {
+                Integer row = rowsById.remove(id);
+                if (row != null) {
+                    documents[row] = null;
+                    deletedRows++;
+                    version++;
+                }
+            }
+            if (deletedRows > BLOCK_ROWS && deletedRows > rows / 2) {
+                compact();
+            }
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+        return Optional.of(true);
+    }
+
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        // Compiled before embedding, so that a malformed filter fails fast
+        Predicate<Map<String, Object>> filter = request.hasFilterExpression()
+                ? MetadataFilter.of(request.getFilterExpression()) : ALL;
+        float[] query = VectorMath.normalize(embeddingModel.embed(request.getQuery()));
+        return search(query, request.getTopK(), request.getSimilarityThreshold(), filter);
+    }
+
+    @Override
+    public long version() {
+        return version;
+    }
+
+    /**
+     * Returns the {@code topK} documents most similar to a normalized query embedding, with
+     * their cosine distance in the {@value #DISTANCE_METADATA} metadata.
+     */
+    @Override
+    public List<Document> search(float[] query, int topK, double similarityThreshold) {
+        return search(query, topK, similarityThreshold, ALL);
+    }
+
+    List<Document> search(float[] query, int topK, double similarityThreshold,
+            Predicate<Map<String, Object>> filter) {
+        Scratch scratch = scratchPool.poll();
+        if (scratch == null) {
+            scratch = new Scratch();
+        }
+        lock.readLock().lock();
+        try {
+            if (rows == 0 || topK <= 0) {
+                return List.of();
+            }
+            if (query.length != dimensions) {
+                throw new IllegalArgumentException(
+                        "Query has " + query.length + " dimensions, the store has " + dimensions);
+            }
+            scratch.ensureCapacity(dimensions, topK);
+            TopK best = scratch.topK;
+            best.reset(topK);
+            if (rows <= PARALLEL_THRESHOLD) {
+                scan(query, 0, rows, filter, best, scratch.row);
+            }
+            else {
+                best.addAll(ForkJoinPool.commonPool().invoke(new ScanTask(query, 0, rows, topK, filter)));
+            }
+            int count = best.drainDescending(scratch.scores, scratch.rows);
+            List<Document> results = new ArrayList<>(count);
+            for (int i = 0; i < count && scratch.scores[i] >= similarityThreshold; i++) {
+                results.add(withDistance(documents[scratch.rows[i]], scratch.scores[i]));
+            }
+            return results;
+        }
+        finally {
+            lock.readLock().unlock();
+            scratchPool.offer(scratch);
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return rowsById.size();
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void scan(float[] query, int from, int to, Predicate<Map<String, Object>> filter, TopK best,
+            float[] row) {
+        for (int r = from; r < to; r++) {
+            Document document = documents[r];
+            if (document == null || (filter != ALL && !filter.test(document.getMetadata()))) {
+                continue;
+            }
+            blocks.get(r / BLOCK_ROWS).get((r % BLOCK_ROWS) * dimensions, row, 0, dimensions);
+            best.offer(VectorMath.dot(query, row, dimensions), r);
+        }
+    }
+
+    private final class ScanTask extends RecursiveTask<TopK> {
+
+        private final float[] query;
+        private final int from;
+        private final int to;
+        private final int k;
+        private final Predicate<Map<String, Object>> filter;
+
+        ScanTask(float[] query, int from, int to, int k, Predicate<Map<String, Object>> filter) {
+            this.query = query;
+            this.from = from;
+            this.to = to;
+            this.k = k;
+            this.filter = filter;
+        }
+
+        @Override
+        protected TopK compute() {
+            if (to - from <= PARALLEL_THRESHOLD) {
+                var best = new TopK(k);
+                best.reset(k);
+                scan(query, from, to, filter, best, new float[dimensions]);
+                return best;
+            }
+            int middle = (from + to) >>> 1;
+            var left = new ScanTask(query, from, middle, k, filter);
+            left.fork();
+            TopK best = new ScanTask(query, middle, to, k, filter).compute();
+            best.addAll(left.join());
+            return best;
+        }
+    }
+
+    private void put(Document document, float[] vector) {
+        if (dimensions == 0) {
+            dimensions = vector.length;
+        }
+        else if (vector.length != dimensions) {
+            throw new IllegalArgumentException("Document " + document.getId() + " has " + vector.length
+                    + " dimensions, the store has " + dimensions);
+        }
+        Integer existing = rowsById.get(document.getId());
+        int row = existing != null ? existing : rows++;
+        writeRow(row, vector);
+        if (row >= documents.length) {
+            documents = Arrays.copyOf(documents, documents.length * 2);
+        }
+        documents[row] = document;
+        rowsById.put(document.getId(), row);
+    }
+
+    private void writeRow(int row, float[] vector) {
+        int block = row / BLOCK_ROWS;
+        if (block == blocks.size()) {
+            blocks.add(ByteBuffer.allocateDirect(BLOCK_ROWS * dimensions * Float.BYTES)
+                    .order(ByteOrder.nativeOrder())
+                    .asFloatBuffer());
+        }
+        blocks.get(block).put((row % BLOCK_ROWS) * dimensions, vector, 0, dimensions);
+    }
+
+    /**
+     * Moves the live rows over the deleted ones and releases the blocks no longer needed.
+     */
+    private void compact() {
+        float[] vector = new float[dimensions];
+        int live = 0;
+        for (int r = 0; r < rows; r++) {
+            Document document = documents[r];
+            if (document == null) {
+                continue;
+            }
+            if (r != live) {
+                blocks.get(r / BLOCK_ROWS).get((r % BLOCK_ROWS) * dimensions, vector, 0, dimensions);
+                writeRow(live, vector);
+                documents[live] = document;
+                documents[r] = null;
+                rowsById.put(document.getId(), live);
+            }
+            live++;
+        }
+        rows = live;
+        deletedRows = 0;
+        int neededBlocks = (rows + BLOCK_ROWS - 1) / BLOCK_ROWS;
+        while (blocks.size() > neededBlocks) {
+            blocks.remove(blocks.size() - 1);
+        }
+    }
+
+    static Document withDistance(Document document, float similarity) {
+        Map<String, Object> metadata = new HashMap<>(document.getMetadata());
+        metadata.put(DISTANCE_METADATA, 1 - similarity);
+        return new Document(document.getId(), document.getContent(), metadata);
+    }
+
+    private static boolean isEmpty(List<Double> embedding) {
+        return embedding == null || embedding.isEmpty();
+    }
+}
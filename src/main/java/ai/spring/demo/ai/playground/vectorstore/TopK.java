@@ -0,0 +1,110 @@
+package ai.spring.demo.ai.playground.vectorstore;
+
+/**
+ * Bounded min-heap of the {@code k} best (score, row) pairs seen so far, backed by
+ * primitive arrays so that it can be reused across queries without allocating.
+ */
+final class TopK {
+
+    private float[] scores;
+    private int[] rows;
+    private int k;
+    private int size;
+
+    TopK(int capacity) {
+        this.scores = new float[capacity];
+        this.rows = new int[capacity];
+    }
+
+    void reset(int k) {
+        if (k > scores.length) {
+            scores = new float[k];
+            rows = new int[k];
+        }
+        this.k = k;
+        this.size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * The lowest score that can still enter the heap.
+     */
+    float threshold() {
+        return size < k ? Float.NEGATIVE_INFINITY : scores[0];
+    }
+
+    void offer(float score, int row) {
+        if (size < k) {
+            int i = size++;
+            scores[i] = score;
+            rows[i] = row;
+            siftUp(i);
+        }
+        else if (k > 0 && score > scores[0]) {
+            scores[0] = score;
+            rows[0] = row;
+            siftDown(0);
+        }
+    }
+
+    void addAll(TopK other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.scores[i], other.rows[i]);
+        }
+    }
+
+    /**
+     * Empties the heap into the given arrays, best first.
+     * @return the number of entries
+     */
+    int drainDescending(float[] scoresOut, int[] rowsOut) {
+        int count = size;
+        for (int i = count - 1; i >= 0; i--) {
+            scoresOut[i] = scores[0];
+            rowsOut[i] = rows[0];
+            size--;
+            scores[0] = scores[size];
+            rows[0] = rows[size];
+            siftDown(0);
+        }
+        return count;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (scores[parent] <= scores[i]) {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= size) {
+                return;
+            }
+            int smallest = left + 1 < size && scores[left + 1] < scores[left] ? left + 1 : left;
+            if (scores[i] <= scores[smallest]) {
+                return;
+            }
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        float score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+        int row = rows[a];
+        rows[a] = rows[b];
+        rows[b] = row;
+    }
+}
@@ -0,0 +1,66 @@
+package ai.spring.demo.ai.playground.vectorstore;
+
+import java.util.List;
+
+/**
+ * Float32 vector arithmetic for the in-process vector stores. Dot products use the JDK
+ * Vector API when the {@code jdk.incubator.vector} module is available (run the JVM with
+ * {@code --add-modules jdk.incubator.vector}) and fall back to scalar code otherwise.
+ */
+public final class VectorMath {
+
+    private static final boolean SIMD = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+            && !Boolean.getBoolean("playground.vectorstore.scalar");
+
+    private VectorMath() {
+    }
+
+    public static boolean isSimd() {
+        return SIMD;
+    }
+
+    /**
+     * Dot product of the first {@code length} components of {@code a} and {@code b}, which
+     * is the cosine similarity for normalized vectors.
+     */
+    public static float dot(float[] a, float[] b, int length) {
+        return SIMD ? SimdDot.dot(a, b, length) : scalarDot(a, b, length);
+    }
+
+    static float scalarDot(float[] a, float[] b, int length) {
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (; i + 3 < length; i += 4) {
+            s0 += a[i] * b[i];
+            s1 += a[i + 1] * b[i + 1];
+            s2 += a[i + 2] * b[i + 2];
+            s3 += a[i + 3] * b[i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += a[i] * b[i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * Converts an embedding to float32 and scales it to unit length.
+     */
+    public static float[] normalize(List<Double> embedding) {
+        float[] vector = new float[embedding.size()];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = embedding.get(i).floatValue();
+        }
+        normalize(vector);
+        return vector;
+    }
+
+    public static void normalize(float[] vector) {
+        double norm = Math.sqrt(scalarDot(vector, vector, vector.length));
+        if (norm > 0) {
+            float scale = (float) (1 / norm);
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] *= scale;
+            }
+        }
+    }
+}
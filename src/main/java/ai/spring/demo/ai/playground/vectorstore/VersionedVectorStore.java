@@ -0,0 +1,24 @@
+package ai.spring.demo.ai.playground.vectorstore;
+
+import java.util.List;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.VectorStore;
+
+/**
+ * {@link VectorStore} that can be searched with an embedding computed by the caller and
+ * that tells when its contents changed, so that search results can be reused safely.
+ */
+public interface VersionedVectorStore extends VectorStore {
+
+    /**
+     * Returns a number that changes whenever documents are added, deleted or loaded.
+     */
+    long version();
+
+    /**
+     * Returns the {@code topK} documents most similar to a normalized query embedding, with
+     * their cosine distance in the distance metadata.
+     */
+    List<Document> search(float[] query, int topK, double similarityThreshold);
+}
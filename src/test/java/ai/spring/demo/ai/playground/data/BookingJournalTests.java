@@ -0,0 +1,126 @@
+package ai.spring.demo.ai.playground.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatNullPointerException;
+
+class BookingJournalTests {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replayStopsAtTornTail() throws IOException {
+        append(0, booking("101"), booking("102"), booking("103"));
+        Path segment = BookingJournal.segmentPath(directory, 1);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        var db = new BookingData();
+        assertThat(BookingJournal.replay(directory, 0, db)).isEqualTo(2);
+        assertThat(db.size()).isEqualTo(2);
+        assertThat(db.findBooking("103")).isNull();
+    }
+
+    @Test
+    void replayStopsAtCorruptRecord() throws IOException {
+        append(0, booking("101"), booking("102"), booking("103"));
+        Path segment = BookingJournal.segmentPath(directory, 1);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Flips a bit of the checksum of the last record
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.read(last, channel.size() - 1);
+            last.put(0, (byte) (last.get(0) ^ 1));
+            channel.write(last.rewind(), channel.size() - 1);
+        }
+
+        var db = new BookingData();
+        assertThat(BookingJournal.replay(directory, 0, db)).isEqualTo(2);
+        assertThat(db.findBooking("102")).isNotNull();
+        assertThat(db.findBooking("103")).isNull();
+    }
+
+    @Test
+    void appendsAfterTornTailGoToNewSegment() throws IOException {
+        append(0, booking("101"), booking("102"));
+        Path segment = BookingJournal.segmentPath(directory, 1);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+        long last = BookingJournal.replay(directory, 0, new BookingData());
+        append(last, booking("103"));
+
+        assertThat(BookingJournal.segments(directory)).containsExactly(segment,
+                BookingJournal.segmentPath(directory, 2));
+        var db = new BookingData();
+        assertThat(BookingJournal.replay(directory, 0, db)).isEqualTo(2);
+        assertThat(db.findBooking("101")).isNotNull();
+        assertThat(db.findBooking("102")).isNull();
+        assertThat(db.findBooking("103")).isNotNull();
+    }
+
+    @Test
+    void replaySkipsRecordsCoveredBySnapshot() throws IOException {
+        append(0, booking("101"), booking("102"), booking("103"));
+
+        var db = new BookingData();
+        assertThat(BookingJournal.replay(directory, 2, db)).isEqualTo(3);
+        assertThat(db.size()).isEqualTo(1);
+        assertThat(db.findBooking("103")).isNotNull();
+    }
+
+    @Test
+    void replaysRemovals() throws IOException {
+        try (var journal = new BookingJournal(directory, 0)) {
+            journal.append(booking("101"));
+            journal.append(booking("102"));
+            journal.appendRemoval(booking("101"));
+        }
+
+        var db = new BookingData();
+        assertThat(BookingJournal.replay(directory, 0, db)).isEqualTo(3);
+        assertThat(db.findBooking("101")).isNull();
+        assertThat(db.findBooking("102")).isNotNull();
+        assertThat(Files.size(BookingJournal.segmentPath(directory, 1))).isPositive();
+    }
+
+    @Test
+    void keepsWritingAfterFailedAppend() throws IOException {
+        try (var journal = new BookingJournal(directory, 0)) {
+            journal.append(booking("101"));
+            var broken = new Booking("102", LocalDate.of(2024, 6, 1), null, BookingStatus.CONFIRMED, "SFO", "LHR",
+                    BookingClass.ECONOMY);
+            assertThatNullPointerException().isThrownBy(() -> journal.append(broken));
+            journal.append(booking("103"));
+        }
+
+        var db = new BookingData();
+        BookingJournal.replay(directory, 0, db);
+        assertThat(db.findBooking("101")).isNotNull();
+        assertThat(db.findBooking("103")).isNotNull();
+    }
+
+    private void append(long lastSequence, Booking... bookings) {
+        try (var journal = new BookingJournal(directory, lastSequence)) {
+            for (Booking booking : bookings) {
+                journal.append(booking);
+            }
+        }
+    }
+
+    static Booking booking(String number) {
+        return new Booking(number, LocalDate.of(2024, 6, 1), new Customer("John", "Doe"), BookingStatus.CONFIRMED,
+                "SFO", "LHR", BookingClass.ECONOMY);
+    }
+}
@@ -0,0 +1,109 @@
+package ai.spring.demo.ai.playground.data;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static ai.spring.demo.ai.playground.data.BookingJournalTests.booking;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalStateException;
+
+class BookingStoreTests {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void snapshotDeletesOnlySegmentsCoveredByPreviousSnapshot() throws IOException {
+        var store = new BookingStore(directory, Duration.ofHours(1));
+        var db = new BookingData();
+        store.recover(db);
+        store.attach(db);
+        try {
+            db.addBooking(booking("101"));
+            assertThat(BookingJournal.segments(directory)).containsExactly(BookingJournal.segmentPath(directory, 1));
+
+            // Covers sequence 1, rolling to a segment starting at 2
+            store.snapshot();
+            assertThat(BookingJournal.segments(directory)).containsExactly(BookingJournal.segmentPath(directory, 1),
+                    BookingJournal.segmentPath(directory, 2));
+            assertThat(BookingSnapshot.snapshots(directory)).containsExactly(BookingSnapshot.path(directory, 0),
+                    BookingSnapshot.path(directory, 1));
+
+            // Covers sequence 2, superseding the snapshot at 0 and the segment starting at 1
+            db.addBooking(booking("102"));
+            store.snapshot();
+            assertThat(BookingJournal.segments(directory)).containsExactly(BookingJournal.segmentPath(directory, 2),
+                    BookingJournal.segmentPath(directory, 3));
+            assertThat(BookingSnapshot.snapshots(directory)).containsExactly(BookingSnapshot.path(directory, 1),
+                    BookingSnapshot.path(directory, 2));
+
+            // Nothing new to cover, so nothing is superseded
+            store.snapshot();
+            assertThat(BookingJournal.segments(directory)).containsExactly(BookingJournal.segmentPath(directory, 2),
+                    BookingJournal.segmentPath(directory, 3));
+            assertThat(BookingSnapshot.snapshots(directory)).containsExactly(BookingSnapshot.path(directory, 1),
+                    BookingSnapshot.path(directory, 2));
+
+            db.addBooking(booking("103"));
+            db.removeBooking(db.findBooking("101"));
+
+            // Recovers as after a crash, from the snapshot and the segment after it
+            assertRecovered("102", "103");
+
+            // And from the previous snapshot and both segments when the latest is damaged
+            Files.write(BookingSnapshot.path(directory, 2), new byte[] { 1, 2, 3 });
+            assertRecovered("102", "103");
+        }
+        finally {
+            store.close();
+        }
+    }
+
+    @Test
+    void refusesToRecoverJournalWithoutReadableSnapshot() throws IOException {
+        var store = new BookingStore(directory, Duration.ofHours(1));
+        var db = new BookingData();
+        store.recover(db);
+        store.attach(db);
+        for (String number : List.of("101", "102")) {
+            db.addBooking(booking(number));
+            store.snapshot();
+        }
+        store.close();
+        for (Path snapshot : BookingSnapshot.snapshots(directory)) {
+            Files.write(snapshot, new byte[] { 1, 2, 3 });
+        }
+
+        var recovering = new BookingStore(directory, Duration.ofHours(1));
+        assertThatIllegalStateException().isThrownBy(() -> recovering.recover(new BookingData()));
+    }
+
+    @Test
+    void recoversFromSnapshotWrittenOnClose() {
+        var store = new BookingStore(directory, Duration.ofHours(1));
+        var db = new BookingData();
+        store.recover(db);
+        store.attach(db);
+        db.addBooking(booking("101"));
+        db.update(db.findBooking("101"), booking -> booking.withBookingStatus(BookingStatus.CANCELLED));
+        store.close();
+
+        var recovered = new BookingData();
+        new BookingStore(directory, Duration.ofHours(1)).recover(recovered);
+        assertThat(recovered.findBooking("101").getBookingStatus()).isEqualTo(BookingStatus.CANCELLED);
+        assertThat(recovered.findBooking("101").getVersion()).isEqualTo(1);
+    }
+
+    private void assertRecovered(String... bookingNumbers) {
+        var recovered = new BookingData();
+        assertThat(new BookingStore(directory, Duration.ofHours(1)).recover(recovered)).isTrue();
+        assertThat(recovered.getBookings().stream().map(Booking::getBookingNumber).toList())
+                .containsExactly(bookingNumbers);
+    }
+}
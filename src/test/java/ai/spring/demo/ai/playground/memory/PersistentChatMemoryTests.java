@@ -0,0 +1,106 @@
+package ai.spring.demo.ai.playground.memory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Stream;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PersistentChatMemoryTests {
+
+    @TempDir
+    Path directory;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @Test
+    void rehydratesAfterCompaction() throws IOException {
+        // The second run starts with a closed segment, so its first full segment is compacted
+        for (int run = 0; run < 2; run++) {
+            try (var memory = open(Duration.ZERO)) {
+                for (int i = run * 20; i < run * 20 + 20; i++) {
+                    memory.add("chat-" + i % 3,
+                            List.of(new UserMessage("question " + i), new AssistantMessage("answer " + i)));
+                }
+                if (run == 1) {
+                    memory.clear("chat-2");
+                    // Lets the full segment roll over before closing
+                    awaitTaken();
+                }
+            }
+        }
+        assertThat(Files.exists(directory.resolve("chat-%020d.log".formatted(1)))).isFalse();
+
+        try (var memory = open(Duration.ZERO)) {
+            assertThat(contents(memory.get("chat-0", 10))).containsExactly("answer 30", "question 33", "answer 33",
+                    "question 36", "answer 36", "question 39", "answer 39");
+            assertThat(contents(memory.get("chat-1", 10))).containsExactly("answer 28", "question 31", "answer 31",
+                    "question 34", "answer 34", "question 37", "answer 37");
+            assertThat(memory.get("chat-2", 10)).isEmpty();
+        }
+    }
+
+    @Test
+    void rehydratesAfterRepeatedCompactions() {
+        for (int run = 0; run < 3; run++) {
+            try (var memory = open(Duration.ZERO)) {
+                for (int i = 0; i < 20; i++) {
+                    memory.add("chat", List.of(new UserMessage("run " + run + " question " + i)));
+                }
+            }
+        }
+
+        try (var memory = open(Duration.ZERO)) {
+            assertThat(contents(memory.get("chat", 2))).containsExactly("run 2 question 18", "run 2 question 19");
+        }
+    }
+
+    @Test
+    void forgetsConversationsPastRetention() throws IOException {
+        try (var memory = open(Duration.ZERO)) {
+            memory.add("chat", List.of(new UserMessage("question")));
+        }
+        try (Stream<Path> segments = Files.list(directory)) {
+            for (Path segment : segments.toList()) {
+                Files.setLastModifiedTime(segment, FileTime.from(Instant.now().minus(Duration.ofDays(2))));
+            }
+        }
+
+        try (var memory = open(Duration.ofDays(3))) {
+            assertThat(memory.get("chat", 10)).hasSize(1);
+        }
+        try (var memory = open(Duration.ofDays(1))) {
+            assertThat(memory.get("chat", 10)).isEmpty();
+        }
+    }
+
+    private PersistentChatMemory open(Duration retention) {
+        meterRegistry = new SimpleMeterRegistry();
+        var hot = new BoundedChatMemory(7, Duration.ofMinutes(30), 1024 * 1024, meterRegistry);
+        // Segments of a few records, compacted every other segment
+        return new PersistentChatMemory(hot, directory, 7, 256, 2, retention, meterRegistry);
+    }
+
+    private void awaitTaken() {
+        while (meterRegistry.get("playground.chat.memory.persistence.queue").gauge().value() > 0) {
+            Thread.onSpinWait();
+        }
+    }
+
+    private static List<String> contents(List<Message> messages) {
+        return messages.stream().map(Message::getContent).toList();
+    }
+}
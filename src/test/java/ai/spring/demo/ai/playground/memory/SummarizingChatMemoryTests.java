@@ -0,0 +1,76 @@
+package ai.spring.demo.ai.playground.memory;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.ai.chat.client.AdvisedRequest;
+import org.springframework.ai.chat.client.advisor.PromptChatMemoryAdvisor;
+import org.springframework.ai.chat.memory.InMemoryChatMemory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.ai.chat.client.advisor.AbstractChatMemoryAdvisor.CHAT_MEMORY_CONVERSATION_ID_KEY;
+import static org.springframework.ai.chat.client.advisor.AbstractChatMemoryAdvisor.CHAT_MEMORY_RETRIEVE_SIZE_KEY;
+
+class SummarizingChatMemoryTests {
+
+    private static final String SUMMARY = "The customer wants to move their flight to next Friday.";
+
+    @Test
+    void summaryReachesPromptThroughMemoryAdvisor() throws InterruptedException {
+        ChatModel chatModel = mock(ChatModel.class);
+        when(chatModel.call(any(Prompt.class))).thenReturn(new ChatResponse(List.of(new Generation(SUMMARY))));
+        var memory = new SummarizingChatMemory(new InMemoryChatMemory(), chatModel, 2, 2,
+                List.of(Pattern.compile("\\bFUN-\\d+\\b")), Duration.ofMinutes(30), new SimpleMeterRegistry());
+        try {
+            memory.add("chat", List.of(new UserMessage("I want to change booking FUN-7"),
+                    new AssistantMessage("What is your name?")));
+            for (int i = 0; i < 3; i++) {
+                memory.add("chat", List.of(new UserMessage("question " + i), new AssistantMessage("answer " + i)));
+            }
+            awaitSummary(memory);
+
+            var request = AdvisedRequest.builder()
+                    .withChatModel(chatModel)
+                    .withSystemText("You are a customer support agent.")
+                    .withUserText("Is that possible?")
+                    .build();
+            AdvisedRequest advised = new PromptChatMemoryAdvisor(memory).adviseRequest(request,
+                    Map.of(CHAT_MEMORY_CONVERSATION_ID_KEY, "chat", CHAT_MEMORY_RETRIEVE_SIZE_KEY, 100));
+
+            String rendered = String.valueOf(advised.systemParams().get("memory"));
+            assertThat(rendered.contains(SUMMARY)).isTrue();
+            assertThat(rendered.contains("FUN-7")).isTrue();
+            assertThat(rendered.contains("answer 2")).isTrue();
+            assertThat(rendered.contains("I want to change booking")).isFalse();
+        }
+        finally {
+            memory.close();
+        }
+    }
+
+    private static void awaitSummary(SummarizingChatMemory memory) throws InterruptedException {
+        for (int i = 0; i < 500; i++) {
+            List<Message> messages = memory.get("chat", 100);
+            if (!messages.isEmpty() && messages.get(0).getContent().contains(SUMMARY)) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("Conversation was not summarized");
+    }
+}
@@ -0,0 +1,128 @@
+package ai.spring.demo.ai.playground.vectorstore;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.filter.Filter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class HnswVectorStoreTests {
+
+    private static final int DIMENSIONS = 32;
+
+    private static final int TOP_K = 10;
+
+    @Test
+    void recallAfterDeletesAndCompaction() {
+        var random = new Random(42);
+        var store = new HnswVectorStore(mock(EmbeddingModel.class), 16, 100, 64);
+        List<Document> documents = new ArrayList<>();
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            float[] vector = randomVector(random);
+            var document = new Document("doc-" + i, "document " + i, Map.of());
+            document.setEmbedding(IntStream.range(0, DIMENSIONS).mapToObj(d -> (double) vector[d]).toList());
+            documents.add(document);
+            vectors.add(vector);
+        }
+        store.add(documents);
+
+        Set<String> deleted = new HashSet<>();
+        for (int i = 0; i < documents.size(); i += 3) {
+            deleted.add(documents.get(i).getId());
+        }
+        store.delete(List.copyOf(deleted));
+        assertThat(store.size()).isEqualTo(documents.size() - deleted.size());
+        assertThat(recall(store, documents, vectors, deleted, new Random(7))).isGreaterThan(0.9);
+
+        store.compact();
+        assertThat(store.size()).isEqualTo(documents.size() - deleted.size());
+        assertThat(recall(store, documents, vectors, deleted, new Random(7))).isGreaterThan(0.9);
+    }
+
+    @Test
+    void recallWithMetadataFilter() {
+        var random = new Random(42);
+        var store = new HnswVectorStore(mock(EmbeddingModel.class), 16, 100, 64);
+        List<Document> documents = new ArrayList<>();
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            float[] vector = randomVector(random);
+            var document = new Document("doc-" + i, "document " + i, Map.of("shard", i % 3));
+            document.setEmbedding(IntStream.range(0, DIMENSIONS).mapToObj(d -> (double) vector[d]).toList());
+            documents.add(document);
+            vectors.add(vector);
+        }
+        store.add(documents);
+
+        Predicate<Map<String, Object>> filter = MetadataFilter.of(
+                new Filter.Expression(Filter.ExpressionType.EQ, new Filter.Key("shard"), new Filter.Value(0L)));
+        Set<String> excluded = new HashSet<>();
+        for (Document document : documents) {
+            if (!filter.test(document.getMetadata())) {
+                excluded.add(document.getId());
+            }
+        }
+        int found = 0;
+        int queries = 100;
+        for (int q = 0; q < queries; q++) {
+            float[] query = randomVector(random);
+            List<String> exact = exact(query, documents, vectors, excluded);
+            List<String> results = store.search(query, TOP_K, -1, filter).stream().map(Document::getId).toList();
+            assertThat(results).hasSize(TOP_K).doesNotContainAnyElementsOf(excluded);
+            found += (int) results.stream().filter(exact::contains).count();
+        }
+        assertThat((double) found / (queries * TOP_K)).isGreaterThan(0.9);
+    }
+
+    /**
+     * Returns the share of the exact nearest live neighbours found, checking that deleted
+     * documents are never returned.
+     */
+    private static double recall(HnswVectorStore store, List<Document> documents, List<float[]> vectors,
+            Set<String> deleted, Random random) {
+        int found = 0;
+        int queries = 100;
+        for (int q = 0; q < queries; q++) {
+            float[] query = randomVector(random);
+            List<String> exact = exact(query, documents, vectors, deleted);
+            List<String> results = store.search(query, TOP_K, 0).stream().map(Document::getId).toList();
+            assertThat(results).hasSize(TOP_K).doesNotContainAnyElementsOf(deleted);
+            found += (int) results.stream().filter(exact::contains).count();
+        }
+        return (double) found / (queries * TOP_K);
+    }
+
+    private static List<String> exact(float[] query, List<Document> documents, List<float[]> vectors,
+            Set<String> excluded) {
+        return IntStream.range(0, documents.size())
+                .filter(i -> !excluded.contains(documents.get(i).getId()))
+                .boxed()
+                .sorted(Comparator.comparingDouble(i -> -VectorMath.dot(query, vectors.get(i), DIMENSIONS)))
+                .limit(TOP_K)
+                .map(i -> documents.get(i).getId())
+                .toList();
+    }
+
+    private static float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        VectorMath.normalize(vector);
+        return vector;
+    }
+}
@@ -0,0 +1,66 @@
+package ai.spring.demo.ai.playground.vectorstore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.Filter.Expression;
+import org.springframework.ai.vectorstore.filter.Filter.Key;
+import org.springframework.ai.vectorstore.filter.Filter.Value;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+import static org.mockito.Mockito.mock;
+import static org.springframework.ai.vectorstore.filter.Filter.ExpressionType.AND;
+import static org.springframework.ai.vectorstore.filter.Filter.ExpressionType.EQ;
+import static org.springframework.ai.vectorstore.filter.Filter.ExpressionType.GTE;
+import static org.springframework.ai.vectorstore.filter.Filter.ExpressionType.IN;
+import static org.springframework.ai.vectorstore.filter.Filter.ExpressionType.NOT;
+
+class OffHeapVectorStoreTests {
+
+    @Test
+    void ranksOnlyDocumentsMatchingTheFilter() {
+        var store = new OffHeapVectorStore(mock(EmbeddingModel.class));
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            // Document i is the i-th closest to the query
+            var document = new Document("doc-" + i, "document " + i,
+                    Map.of("airline", i % 2 == 0 ? "FUN" : "SKY", "rank", i));
+            document.setEmbedding(List.of(1.0, (double) i));
+            documents.add(document);
+        }
+        store.add(documents);
+        float[] query = VectorMath.normalize(List.of(1.0, 0.0));
+
+        assertThat(ids(store.search(query, 3, -1,
+                MetadataFilter.of(new Expression(EQ, new Key("airline"), new Value("SKY"))))))
+                .containsExactly("doc-1", "doc-3", "doc-5");
+        assertThat(ids(store.search(query, 3, -1, MetadataFilter.of(new Expression(AND,
+                new Expression(EQ, new Key("airline"), new Value("FUN")),
+                new Filter.Group(new Expression(GTE, new Key("rank"), new Value(5L))))))))
+                .containsExactly("doc-6", "doc-8");
+        assertThat(ids(store.search(query, 2, -1, MetadataFilter.of(new Expression(NOT,
+                new Expression(IN, new Key("rank"), new Value(List.of(0, 1, 2))))))))
+                .containsExactly("doc-3", "doc-4");
+        assertThat(ids(store.search(query, 2, -1,
+                MetadataFilter.of(new Expression(EQ, new Key("missing"), new Value("FUN")))))).isEmpty();
+    }
+
+    @Test
+    void rejectsMalformedFilter() {
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> MetadataFilter.of(new Expression(IN, new Key("rank"), new Value(1))));
+        assertThatIllegalArgumentException()
+                .isThrownBy(() -> MetadataFilter.of(new Expression(EQ, new Value(1), new Key("rank"))));
+    }
+
+    private static List<String> ids(List<Document> documents) {
+        return documents.stream().map(Document::getId).toList();
+    }
+}